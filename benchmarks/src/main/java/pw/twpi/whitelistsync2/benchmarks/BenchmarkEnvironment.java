@@ -0,0 +1,154 @@
+package pw.twpi.whitelistsync2.benchmarks;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.configuration.file.YamlConfiguration;
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+import pw.twpi.whitelistsync2.service.LocalWhitelistApplier;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sets up the static plugin state the services expect, with Bukkit replaced by stubs so the
+ * benchmarks run without a server.
+ */
+public final class BenchmarkEnvironment {
+
+    private static boolean initialized = false;
+
+    private BenchmarkEnvironment() {
+    }
+
+    public static synchronized void init() {
+        if (initialized) {
+            return;
+        }
+
+        Logger logger = Logger.getLogger("WhitelistSync2-benchmark");
+        logger.setLevel(Level.OFF);
+        WhitelistSync2.LOGGER = logger;
+
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("general.sync-ops", false);
+        config.set("general.batch-size", 1000);
+        WhitelistSync2.CONFIG = config;
+
+        // No scheduler, sync results are applied on the benchmark thread
+        WhitelistSync2.whitelistApplier = new LocalWhitelistApplier(Runnable::run);
+
+        Bukkit.setServer(stubServer(logger));
+        initialized = true;
+    }
+
+    // Fresh working directory holding whitelist.json and the SQLite database.
+    public static File createServerDirectory() throws IOException {
+        File directory = Files.createTempDirectory("whitelistsync2-bench").toFile();
+
+        WhitelistSync2.SERVER_FILEPATH = directory.getAbsolutePath();
+        WhitelistSync2.CONFIG.set("sqlite.database-path", new File(directory, "whitelist.db").getAbsolutePath());
+        return directory;
+    }
+
+    // Players with random UUIDs and unique lowercase names.
+    public static List<WhitelistedPlayer> generatePlayers(int count, long seed) {
+        Random random = new Random(seed);
+        List<WhitelistedPlayer> players = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            players.add(new WhitelistedPlayer(uuid.toString(), "player" + i, true));
+        }
+        return players;
+    }
+
+    // Write players in the format of the server's whitelist.json.
+    public static void writeWhitelistFile(File directory, List<WhitelistedPlayer> players) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(new File(directory, "whitelist.json").toPath(), StandardCharsets.UTF_8)) {
+            writer.write("[\n");
+            for (int i = 0; i < players.size(); i++) {
+                WhitelistedPlayer player = players.get(i);
+                writer.write("  {\n    \"uuid\": \"" + player.getUuid() + "\",\n    \"name\": \"" + player.getName() + "\"\n  }");
+                writer.write(i == players.size() - 1 ? "\n" : ",\n");
+            }
+            writer.write("]");
+        }
+    }
+
+    public static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static Server stubServer(Logger logger) {
+        return (Server) Proxy.newProxyInstance(BenchmarkEnvironment.class.getClassLoader(), new Class<?>[]{Server.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getLogger":
+                            return logger;
+                        case "getName":
+                        case "getVersion":
+                        case "getBukkitVersion":
+                            return "benchmark";
+                        case "getOfflinePlayer":
+                            return stubPlayer(args[0] instanceof UUID ? (UUID) args[0] : UUID.nameUUIDFromBytes(args[0].toString().getBytes(StandardCharsets.UTF_8)),
+                                    args[0] instanceof String ? (String) args[0] : null);
+                        default:
+                            return defaultValue(method);
+                    }
+                });
+    }
+
+    private static OfflinePlayer stubPlayer(UUID uuid, String name) {
+        return (OfflinePlayer) Proxy.newProxyInstance(BenchmarkEnvironment.class.getClassLoader(), new Class<?>[]{OfflinePlayer.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getUniqueId":
+                            return uuid;
+                        case "getName":
+                            return name;
+                        default:
+                            return defaultValue(method);
+                    }
+                });
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == double.class) {
+            return 0.0;
+        } else if (type == float.class) {
+            return 0.0f;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == char.class) {
+            return '\0';
+        }
+        return null;
+    }
+}
@@ -0,0 +1,64 @@
+package pw.twpi.whitelistsync2.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.service.SqLiteService;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * copyLocalWhitelistedPlayersToDatabase pushing a whitelist.json into SQLite.
+ * Each invocation pushes the whole file, so rows per second is whitelistSize divided by the score.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkImportBenchmark {
+
+    @Param({"10000", "50000"})
+    public int whitelistSize;
+
+    @Param({"100", "1000", "5000"})
+    public int batchSize;
+
+    private File directory;
+    private SqLiteService service;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        BenchmarkEnvironment.init();
+        WhitelistSync2.CONFIG.set("general.batch-size", batchSize);
+
+        directory = BenchmarkEnvironment.createServerDirectory();
+        BenchmarkEnvironment.writeWhitelistFile(directory, BenchmarkEnvironment.generatePlayers(whitelistSize, 42));
+        service = new SqLiteService();
+        service.initializeDatabase();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.shutdown();
+        BenchmarkEnvironment.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public boolean copyLocalToDatabase() {
+        return service.copyLocalWhitelistedPlayersToDatabase(message -> { });
+    }
+}
@@ -0,0 +1,81 @@
+package pw.twpi.whitelistsync2.benchmarks;
+
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pw.twpi.whitelistsync2.Listener.PlayerPreLoginListener;
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.models.WhitelistCache;
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for PlayerPreLoginListener to decide on a login, for whitelisted and unknown players.
+ * Unknown players are mostly turned away by the index's bloom filter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoginLookupBenchmark {
+
+    @Param({"100", "10000", "100000", "1000000"})
+    public int whitelistSize;
+
+    private PlayerPreLoginListener listener;
+    private AsyncPlayerPreLoginEvent[] whitelistedLogins;
+    private AsyncPlayerPreLoginEvent[] unknownLogins;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        BenchmarkEnvironment.init();
+
+        List<WhitelistedPlayer> players = BenchmarkEnvironment.generatePlayers(whitelistSize, 42);
+        WhitelistCache.replace(players);
+
+        // The plugin instance is not used by the listener. Every event comes from one address, so no rate limit.
+        WhitelistSync2.CONFIG.set("login-limit.enabled", false);
+        listener = new PlayerPreLoginListener(null);
+
+        InetAddress address = InetAddress.getLoopbackAddress();
+        whitelistedLogins = new AsyncPlayerPreLoginEvent[1024];
+        unknownLogins = new AsyncPlayerPreLoginEvent[1024];
+        List<WhitelistedPlayer> unknown = BenchmarkEnvironment.generatePlayers(unknownLogins.length, 7);
+        for (int i = 0; i < whitelistedLogins.length; i++) {
+            WhitelistedPlayer player = players.get(i % players.size());
+            whitelistedLogins[i] = new AsyncPlayerPreLoginEvent(player.getName(), address, UUID.fromString(player.getUuid()));
+            unknownLogins[i] = new AsyncPlayerPreLoginEvent("bot" + i, address, UUID.fromString(unknown.get(i).getUuid()));
+        }
+    }
+
+    @Benchmark
+    public AsyncPlayerPreLoginEvent.Result whitelistedLogin() {
+        AsyncPlayerPreLoginEvent event = whitelistedLogins[next++ & 1023];
+        listener.onPreLogin(event);
+        return event.getLoginResult();
+    }
+
+    @Benchmark
+    public AsyncPlayerPreLoginEvent.Result unknownLogin() {
+        AsyncPlayerPreLoginEvent event = unknownLogins[next++ & 1023];
+        listener.onPreLogin(event);
+        return event.getLoginResult();
+    }
+}
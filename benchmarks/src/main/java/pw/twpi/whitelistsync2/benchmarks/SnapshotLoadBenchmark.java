@@ -0,0 +1,68 @@
+package pw.twpi.whitelistsync2.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pw.twpi.whitelistsync2.models.WhitelistIndex;
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+import pw.twpi.whitelistsync2.service.WhitelistSnapshotFile;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from the binary whitelist snapshot on disk to a login index, as done at startup.
+ * The file size is printed once per trial.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnapshotLoadBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int whitelistSize;
+
+    private File directory;
+    private List<WhitelistedPlayer> players;
+    private WhitelistSnapshotFile snapshot;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        BenchmarkEnvironment.init();
+        directory = BenchmarkEnvironment.createServerDirectory();
+        players = BenchmarkEnvironment.generatePlayers(whitelistSize, 42);
+        snapshot = new WhitelistSnapshotFile(new File(directory, "whitelist.snapshot").toPath());
+        snapshot.write(players);
+        System.out.println("Snapshot of " + whitelistSize + " players: " + snapshot.size() + " bytes");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkEnvironment.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public WhitelistIndex load() throws Exception {
+        return new WhitelistIndex(snapshot.load());
+    }
+
+    @Benchmark
+    public long write() throws Exception {
+        snapshot.write(players);
+        return snapshot.size();
+    }
+}
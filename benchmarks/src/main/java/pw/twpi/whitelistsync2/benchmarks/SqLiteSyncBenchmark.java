@@ -0,0 +1,73 @@
+package pw.twpi.whitelistsync2.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pw.twpi.whitelistsync2.service.SqLiteService;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * copyDatabaseWhitelistedPlayersToLocal against a SQLite file in a temp directory.
+ * fullSync is the first sync after start, idleSync a later poll when nothing changed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SqLiteSyncBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int whitelistSize;
+
+    private File directory;
+    private SqLiteService service;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        BenchmarkEnvironment.init();
+        directory = BenchmarkEnvironment.createServerDirectory();
+
+        // Fill the database from a whitelist.json, then sync against the same file so only the diff is measured.
+        BenchmarkEnvironment.writeWhitelistFile(directory, BenchmarkEnvironment.generatePlayers(whitelistSize, 42));
+        service = new SqLiteService();
+        service.initializeDatabase();
+        service.copyLocalWhitelistedPlayersToDatabase(message -> { });
+        service.copyDatabaseWhitelistedPlayersToLocal(null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.shutdown();
+        BenchmarkEnvironment.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public boolean fullSync() {
+        SqLiteService fresh = new SqLiteService();
+        fresh.initializeDatabase();
+        try {
+            return fresh.copyDatabaseWhitelistedPlayersToLocal(null);
+        } finally {
+            fresh.shutdown();
+        }
+    }
+
+    @Benchmark
+    public boolean idleSync() {
+        return service.copyDatabaseWhitelistedPlayersToLocal(null);
+    }
+}
@@ -0,0 +1,84 @@
+package pw.twpi.whitelistsync2.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+import pw.twpi.whitelistsync2.service.ConnectionPool;
+import pw.twpi.whitelistsync2.service.SqLiteService;
+import pw.twpi.whitelistsync2.service.UuidCodec;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call latency of a single parameterized lookup through ConnectionPool,
+ * with the per-connection statement cache disabled (0) and enabled.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatementCacheBenchmark {
+
+    @Param({"0", "32"})
+    public int statementCacheSize;
+
+    private File directory;
+    private ConnectionPool pool;
+    private List<WhitelistedPlayer> players;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        BenchmarkEnvironment.init();
+        directory = BenchmarkEnvironment.createServerDirectory();
+
+        players = BenchmarkEnvironment.generatePlayers(10000, 42);
+        BenchmarkEnvironment.writeWhitelistFile(directory, players);
+        SqLiteService service = new SqLiteService();
+        service.initializeDatabase();
+        service.copyLocalWhitelistedPlayersToDatabase(message -> { });
+        service.shutdown();
+
+        WhitelistSync2.CONFIG.set("pool.statement-cache-size", statementCacheSize);
+        pool = new ConnectionPool("Benchmark", "jdbc:sqlite:" + WhitelistSync2.CONFIG.getString("sqlite.database-path"), new Properties());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+        BenchmarkEnvironment.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public String lookupByUuid() throws SQLException {
+        WhitelistedPlayer player = players.get(next++ % players.size());
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT name FROM whitelist WHERE uuid = ?")) {
+            stmt.setBytes(1, UuidCodec.toBytes(player.getUuidMost(), player.getUuidLeast()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString("name") : null;
+            }
+        }
+    }
+}
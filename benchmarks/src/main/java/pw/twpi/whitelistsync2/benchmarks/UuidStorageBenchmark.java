@@ -0,0 +1,114 @@
+package pw.twpi.whitelistsync2.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+import pw.twpi.whitelistsync2.service.ConnectionPool;
+import pw.twpi.whitelistsync2.service.UuidCodec;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full read of a SQLite whitelist table into players, with UUIDs stored as text (before) and as 16 byte blobs (after).
+ * Text rows are parsed from their string form, blob rows decoded straight into the two halves.
+ * The database size is printed once per trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UuidStorageBenchmark {
+
+    @Param({"text", "binary"})
+    public String storage;
+
+    @Param({"10000", "100000"})
+    public int whitelistSize;
+
+    private File directory;
+    private ConnectionPool pool;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        BenchmarkEnvironment.init();
+        directory = BenchmarkEnvironment.createServerDirectory();
+        pool = new ConnectionPool("Benchmark", "jdbc:sqlite:" + WhitelistSync2.CONFIG.getString("sqlite.database-path"), new Properties());
+
+        boolean binary = storage.equals("binary");
+        try (Connection conn = pool.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE whitelist (uuid " + (binary ? "blob" : "text") + " NOT NULL PRIMARY KEY, name text, whitelisted integer NOT NULL);");
+            }
+
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO whitelist(uuid, name, whitelisted) VALUES (?, ?, 1)")) {
+                for (WhitelistedPlayer player : BenchmarkEnvironment.generatePlayers(whitelistSize, 42)) {
+                    if (binary) {
+                        stmt.setBytes(1, UuidCodec.toBytes(player.getUuidMost(), player.getUuidLeast()));
+                    } else {
+                        stmt.setString(1, player.getUuid());
+                    }
+                    stmt.setString(2, player.getName());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            conn.commit();
+            conn.setAutoCommit(true);
+
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("VACUUM;");
+            }
+        }
+
+        System.out.println("Whitelist of " + whitelistSize + " players with " + storage + " UUIDs: "
+                + new File(WhitelistSync2.CONFIG.getString("sqlite.database-path")).length() + " bytes");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+        BenchmarkEnvironment.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public List<WhitelistedPlayer> fullTableRead() throws SQLException {
+        List<WhitelistedPlayer> players = new ArrayList<>(whitelistSize);
+        boolean binary = storage.equals("binary");
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT uuid, name, whitelisted FROM whitelist");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                if (binary) {
+                    players.add(UuidCodec.toPlayer(rs.getBytes("uuid"), rs.getString("name"), rs.getInt("whitelisted") == 1));
+                } else {
+                    players.add(new WhitelistedPlayer(rs.getString("uuid"), rs.getString("name"), rs.getInt("whitelisted") == 1));
+                }
+            }
+        }
+        return players;
+    }
+}
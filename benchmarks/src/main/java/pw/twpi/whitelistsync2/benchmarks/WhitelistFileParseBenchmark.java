@@ -0,0 +1,89 @@
+package pw.twpi.whitelistsync2.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.infra.Blackhole;
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.json.WhitelistedPlayersFileUtilities;
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to read the server's whitelist.json into players.
+ * Run with -prof gc to compare allocation per parse: treeParse is the old JsonParser implementation,
+ * streamingParse only visits each player and getWhitelistedPlayers also collects them into a list.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WhitelistFileParseBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int whitelistSize;
+
+    private File directory;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        BenchmarkEnvironment.init();
+        directory = BenchmarkEnvironment.createServerDirectory();
+        BenchmarkEnvironment.writeWhitelistFile(directory, BenchmarkEnvironment.generatePlayers(whitelistSize, 42));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkEnvironment.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public List<WhitelistedPlayer> getWhitelistedPlayers() {
+        return WhitelistedPlayersFileUtilities.getWhitelistedPlayers();
+    }
+
+    @Benchmark
+    public boolean streamingParse(Blackhole blackhole) {
+        return WhitelistedPlayersFileUtilities.forEachWhitelistedPlayer(blackhole::consume);
+    }
+
+    // Baseline: the whole file parsed into a JsonArray, then converted to players
+    @Benchmark
+    public List<WhitelistedPlayer> treeParse() throws IOException {
+        JsonArray whitelist;
+        try (Reader reader = new FileReader(WhitelistSync2.SERVER_FILEPATH + "/whitelist.json")) {
+            whitelist = (JsonArray) new JsonParser().parse(reader);
+        }
+
+        List<WhitelistedPlayer> players = new ArrayList<>();
+        for (JsonElement user : whitelist) {
+            JsonObject object = (JsonObject) user;
+            JsonElement name = object.get("name");
+            players.add(new WhitelistedPlayer(object.get("uuid").getAsString(), name != null ? name.getAsString() : "", true));
+        }
+        return players;
+    }
+}
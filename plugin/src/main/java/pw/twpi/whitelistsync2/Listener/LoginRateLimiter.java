@@ -0,0 +1,81 @@
+package pw.twpi.whitelistsync2.Listener;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket per IP address for the pre-login path. Each address may make burst logins in a row
+ * and regains perSecond of them every second. Buckets that have refilled are dropped once a minute,
+ * or sooner when a flood from many addresses fills the map.
+ */
+public class LoginRateLimiter {
+
+    private static final long SWEEP_INTERVAL = 60_000_000_000L;
+    private static final int SWEEP_SIZE = 100_000;
+
+    private final double perNano;
+    private final double burst;
+    private final ConcurrentHashMap<InetAddress, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL);
+
+    private static final class Bucket {
+        private double tokens;
+        private long lastRefill;
+
+        private Bucket(double tokens, long lastRefill) {
+            this.tokens = tokens;
+            this.lastRefill = lastRefill;
+        }
+
+        private void refill(long now, double perNano, double burst) {
+            tokens = Math.min(burst, tokens + (now - lastRefill) * perNano);
+            lastRefill = now;
+        }
+    }
+
+    public LoginRateLimiter(double perSecond, int burst) {
+        this.perNano = perSecond / 1_000_000_000.0;
+        this.burst = burst;
+    }
+
+    // Take one login from the address's bucket. False if it has none left.
+    public boolean tryAcquire(InetAddress address) {
+        long now = System.nanoTime();
+        sweepIfDue(now);
+
+        if (address == null) {
+            return true;
+        }
+
+        Bucket bucket = buckets.computeIfAbsent(address, key -> new Bucket(burst, now));
+        synchronized (bucket) {
+            bucket.refill(now, perNano, burst);
+            if (bucket.tokens < 1) {
+                return false;
+            }
+            bucket.tokens--;
+            return true;
+        }
+    }
+
+    public int getTrackedAddresses() {
+        return buckets.size();
+    }
+
+    // Forget addresses whose bucket is full again, they behave the same as new ones.
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if ((now - due < 0 && buckets.size() < SWEEP_SIZE) || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL)) {
+            return;
+        }
+
+        buckets.entrySet().removeIf(entry -> {
+            Bucket bucket = entry.getValue();
+            synchronized (bucket) {
+                bucket.refill(now, perNano, burst);
+                return bucket.tokens >= burst;
+            }
+        });
+    }
+}
@@ -0,0 +1,121 @@
+package pw.twpi.whitelistsync2.Listener;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.metrics.Counter;
+import pw.twpi.whitelistsync2.metrics.Histogram;
+import pw.twpi.whitelistsync2.metrics.Metrics;
+import pw.twpi.whitelistsync2.models.WhitelistCache;
+import pw.twpi.whitelistsync2.models.WhitelistIndex;
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+
+public class PlayerPreLoginListener implements Listener {
+    private static final String KICK_MESSAGE = "You are not whitelisted for Divergent SMP!";
+    private static final String RATE_LIMIT_MESSAGE = "Too many login attempts, please wait a moment.";
+
+    private final WhitelistSync2 plugin;
+    // Null when login-limit.enabled is off
+    private final LoginRateLimiter rateLimiter;
+    // Proxies and other addresses many players share
+    private final Set<InetAddress> exemptAddresses = new HashSet<>();
+
+    private static final Histogram DECISION_TIME = Metrics.histogram("prelogin_seconds", "Time taken to accept or reject a login.");
+    private static final Counter RATE_LIMITED = Metrics.counter("logins_total", "Logins by how they were decided.", "result", "rate_limited");
+    private static final Counter FAST_REJECTS = Metrics.counter("logins_total", "Logins by how they were decided.", "result", "filtered");
+    private static final Counter FULL_LOOKUPS = Metrics.counter("logins_total", "Logins by how they were decided.", "result", "looked_up");
+
+    public PlayerPreLoginListener(WhitelistSync2 plugin) {
+        this.plugin = plugin;
+        this.rateLimiter = WhitelistSync2.CONFIG.getBoolean("login-limit.enabled", false)
+                ? new LoginRateLimiter(Math.max(0.01, WhitelistSync2.CONFIG.getDouble("login-limit.per-second", 2)),
+                        Math.max(1, WhitelistSync2.CONFIG.getInt("login-limit.burst", 10)))
+                : null;
+
+        for (String address : WhitelistSync2.CONFIG.getStringList("login-limit.exempt-addresses")) {
+            try {
+                exemptAddresses.add(InetAddress.getByName(address));
+            } catch (UnknownHostException e) {
+                WhitelistSync2.LOGGER.warning("Ignoring unknown login-limit exempt address " + address + ".");
+            }
+        }
+    }
+
+    public int getTrackedAddresses() {
+        return rateLimiter != null ? rateLimiter.getTrackedAddresses() : 0;
+    }
+
+    public String describeTimings() {
+        return "Logins rate limited: " + RATE_LIMITED.get() + ", rejected by the filter: " + FAST_REJECTS.get()
+                + ", looked up: " + FULL_LOOKUPS.get()
+                + (rateLimiter != null ? ", addresses tracked: " + rateLimiter.getTrackedAddresses() : "");
+    }
+
+    @EventHandler
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        long startTime = System.nanoTime();
+        try {
+            decide(event);
+        } finally {
+            DECISION_TIME.recordSince(startTime);
+        }
+    }
+
+    private void decide(AsyncPlayerPreLoginEvent event) {
+        if (rateLimiter != null && !exemptAddresses.contains(event.getAddress()) && !rateLimiter.tryAcquire(event.getAddress())) {
+            RATE_LIMITED.increment();
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, RATE_LIMIT_MESSAGE);
+            return;
+        }
+
+        boolean verified = false;
+        String username = WhitelistIndex.normalize(event.getName());
+        UUID uuid = event.getUniqueId();
+        WhitelistIndex index = WhitelistCache.current();
+
+        // Neither the UUID nor the name is whitelisted, no need to look further
+        if (!index.mightContain(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), username)) {
+            FAST_REJECTS.increment();
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, KICK_MESSAGE);
+            return;
+        }
+        FULL_LOOKUPS.increment();
+
+        WhitelistedPlayer player = index.getByUuid(uuid);
+        if (player != null && player.isIDWhitelisted()){
+            verified = true;
+            if (!player.getName().equals(username)){
+                WhitelistSync2.LOGGER.info("Username " + player.getName() + " has been changed to " + username);
+                if (WhitelistCache.rename(uuid, username)) {
+                    WhitelistSync2.writeBehindQueue.enqueueRename(String.valueOf(uuid), username);
+                }
+            }
+            WhitelistSync2.LOGGER.info(username + " connected with UUID");
+        } else {
+            player = index.getByName(username);
+            if (player != null && !player.isIDWhitelisted()){
+                verified = true;
+                if (WhitelistCache.bindUuid(username, uuid)) {
+                    WhitelistSync2.LOGGER.info(username + " connected with username, recording UUID");
+                    WhitelistSync2.writeBehindQueue.enqueueBind(username, String.valueOf(uuid));
+                }
+            }
+        }
+        if (!verified){
+            event.setLoginResult(AsyncPlayerPreLoginEvent.Result.KICK_OTHER);
+            event.setKickMessage(KICK_MESSAGE);
+        }
+    }
+
+
+}
\ No newline at end of file
@@ -9,8 +9,11 @@ import java.util.List;
 public class TabCompleter implements org.bukkit.command.TabCompleter {
     @Override
     public List<String> onTabComplete(CommandSender commandSender, Command command, String s, String[] strings) {
+        if (strings.length < 1 && command.getName().equalsIgnoreCase("wlop")) {
+            return Arrays.asList("list", "op", "deop", "sync", "copyservertodatabase");
+        }
         if (strings.length < 1) {
-            return Arrays.asList("list", "add", "remove", "sync", "copyservertodatabase");
+            return Arrays.asList("list", "add", "remove", "sync", "copyservertodatabase", "pool", "timings", "stats");
         }
         return null;
     }
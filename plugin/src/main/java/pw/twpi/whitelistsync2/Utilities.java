@@ -1,5 +1,6 @@
 package pw.twpi.whitelistsync2;
 
+import pw.twpi.whitelistsync2.models.OppedPlayer;
 import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
 
 import java.util.ArrayList;
@@ -34,4 +35,22 @@ public class Utilities {
         return outstr;
     }
 
-}
\ No newline at end of file
+    public static String FormatOppedPlayersOutput(ArrayList<OppedPlayer> oppedPlayers) {
+        if (oppedPlayers.isEmpty()) {
+            return "Op list is empty";
+        }
+
+        StringBuilder outstr = new StringBuilder();
+        for (int i = 0; i < oppedPlayers.size(); i++) {
+            if (i % 5 == 0 && i != 0) {
+                outstr.append("\n");
+            } else if (i != 0) {
+                outstr.append(", ");
+            }
+            outstr.append(oppedPlayers.get(i).getName());
+        }
+
+        return outstr.toString();
+    }
+
+}
@@ -0,0 +1,251 @@
+package pw.twpi.whitelistsync2;
+
+import org.bukkit.Bukkit;
+import pw.twpi.whitelistsync2.Listener.PlayerPreLoginListener;
+import pw.twpi.whitelistsync2.Listener.TabCompleter;
+import pw.twpi.whitelistsync2.commands.AsyncCommandRunner;
+import pw.twpi.whitelistsync2.commands.CommandWhitelist;
+import pw.twpi.whitelistsync2.commands.CommandWlop;
+import pw.twpi.whitelistsync2.json.WhitelistFileCache;
+import pw.twpi.whitelistsync2.metrics.Metrics;
+import pw.twpi.whitelistsync2.metrics.MetricsServer;
+import pw.twpi.whitelistsync2.models.WhitelistCache;
+import pw.twpi.whitelistsync2.models.WhitelistChange;
+import pw.twpi.whitelistsync2.notify.ChangeNotifier;
+import pw.twpi.whitelistsync2.notify.MulticastChangeNotifier;
+import pw.twpi.whitelistsync2.service.BaseService;
+import pw.twpi.whitelistsync2.service.JournaledService;
+import pw.twpi.whitelistsync2.service.LocalOpApplier;
+import pw.twpi.whitelistsync2.service.LocalWhitelistApplier;
+import pw.twpi.whitelistsync2.service.SyncThread;
+import pw.twpi.whitelistsync2.service.WhitelistJournal;
+import pw.twpi.whitelistsync2.service.WriteBehindQueue;
+import org.bukkit.Server;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.Collections;
+import java.util.ServiceLoader;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+public class WhitelistSync2 extends JavaPlugin {
+
+    public static FileConfiguration CONFIG;
+    public Server server = getServer();
+
+    public static Logger LOGGER;
+    public static String SERVER_FILEPATH;
+
+    // Database Service
+    public static BaseService whitelistService;
+    public static SyncThread syncThread;
+    public static AsyncCommandRunner commandRunner;
+    public static WriteBehindQueue writeBehindQueue;
+    public static LocalWhitelistApplier whitelistApplier;
+    public static LocalOpApplier opApplier;
+    public static PlayerPreLoginListener loginListener;
+    public static MetricsServer metricsServer;
+
+    // Cross-server change notifications
+    public static ChangeNotifier changeNotifier = ChangeNotifier.NONE;
+
+    @Override
+    public void onEnable() {
+        CONFIG = getConfig();
+        LOGGER = getLogger();
+
+        LOGGER.info("Setting up Whitelist Sync!");
+
+        SERVER_FILEPATH = getServer().getWorldContainer().getAbsolutePath();
+        loginListener = new PlayerPreLoginListener(this);
+        Bukkit.getPluginManager().registerEvents(loginListener, this);
+
+        LOGGER.info("Server Filepath: " + SERVER_FILEPATH);
+        WhitelistFileCache.start();
+
+        // Setup config
+        LoadConfiguration();
+
+        // Setup Services
+        if(LoadServices()) {
+            // Commands
+            commandRunner = new AsyncCommandRunner(this, CONFIG.getInt("general.command-threads", 2));
+            this.getCommand("wl").setExecutor(new CommandWhitelist(this, whitelistService, commandRunner));
+            this.getCommand("wl").setTabCompleter(new TabCompleter());
+            this.getCommand("wlop").setExecutor(new CommandWlop(this, whitelistService, commandRunner));
+            this.getCommand("wlop").setTabCompleter(new TabCompleter());
+
+            whitelistApplier = new LocalWhitelistApplier(mainThread());
+            opApplier = new LocalOpApplier(mainThread());
+
+            writeBehindQueue = new WriteBehindQueue(whitelistService, new File(getDataFolder(), "pending-updates.json"));
+            writeBehindQueue.start();
+
+            StartSyncThread(this, whitelistService);
+            StartChangeNotifier();
+            StartMetrics();
+        }
+    }
+
+    @Override
+    public void onDisable() {
+        LOGGER.info("Shutting down Whitelist Sync!");
+
+        changeNotifier.close();
+
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+
+        if (commandRunner != null) {
+            commandRunner.shutdown();
+        }
+
+        // Stop scheduling syncs and let a running one finish before its changes are applied below
+        if (syncThread != null) {
+            syncThread.shutdown();
+        }
+
+        // Changes from the last sync that did not get their tick yet
+        if (whitelistApplier != null) {
+            whitelistApplier.shutdown();
+        }
+        if (opApplier != null) {
+            opApplier.shutdown();
+        }
+
+        // Write login updates still queued before the database connections close
+        if (writeBehindQueue != null) {
+            writeBehindQueue.shutdown();
+        }
+
+        if (whitelistService != null) {
+            whitelistService.shutdown();
+        }
+
+        WhitelistFileCache.stop();
+    }
+
+    public static void StartSyncThread(JavaPlugin plugin, BaseService service) {
+        syncThread = new SyncThread(plugin, service);
+        plugin.getLogger().info("Sync Thread Started!");
+    }
+
+    // Queue depths and sizes are read when metrics are collected. Timings are recorded where they happen.
+    public void StartMetrics() {
+        Metrics.gauge("whitelisted_players", "Players in the login whitelist.", () -> WhitelistCache.current().size());
+        Metrics.gauge("queue_depth", "Work waiting in the plugin's queues.", () -> writeBehindQueue.size(), "queue", "write_behind");
+        Metrics.gauge("queue_depth", "Work waiting in the plugin's queues.", () -> whitelistApplier.getPending(), "queue", "main_thread_apply");
+        Metrics.gauge("queue_depth", "Work waiting in the plugin's queues.", () -> opApplier.getPending(), "queue", "main_thread_ops");
+        Metrics.gauge("queue_depth", "Work waiting in the plugin's queues.", () -> commandRunner.getQueuedCommands(), "queue", "commands");
+        Metrics.gauge("login_limiter_addresses", "IP addresses tracked by the login rate limiter.", () -> loginListener.getTrackedAddresses());
+
+        metricsServer = new MetricsServer();
+        metricsServer.start();
+    }
+
+    public void StartChangeNotifier() {
+        if (!CONFIG.getBoolean("notifications.enabled")) {
+            return;
+        }
+
+        if (!whitelistService.supportsNotifications()) {
+            LOGGER.warning("Sync mode " + whitelistService.getSyncMode() + " does not support notifications, only polling is used.");
+            return;
+        }
+
+        try {
+            InetAddress group = InetAddress.getByName(CONFIG.getString("notifications.group"));
+            String interfaceName = CONFIG.getString("notifications.interface", "");
+            NetworkInterface networkInterface = interfaceName.isEmpty() ? null : NetworkInterface.getByName(interfaceName);
+            if (!interfaceName.isEmpty() && networkInterface == null) {
+                LOGGER.warning("Network interface " + interfaceName + " not found, using the default.");
+            }
+
+            changeNotifier = new MulticastChangeNotifier(group, CONFIG.getInt("notifications.port"), networkInterface, CONFIG.getInt("notifications.ttl", 1),
+                    CONFIG.getString("notifications.secret", ""));
+        } catch (IOException e) {
+            LOGGER.severe("Invalid notification settings! Falling back to polling only.");
+            e.printStackTrace();
+            return;
+        }
+
+        changeNotifier.start(new ChangeNotifier.Handler() {
+            @Override
+            public void onChange(WhitelistChange change) {
+                // Only signed changes get here. Apply right away for the login path, then pick up the written row from the database.
+                // Without delta syncs that would mean reading everything again, so it waits for the next interval.
+                WhitelistCache.applyChanges(Collections.singletonList(change));
+                if (whitelistService.supportsDelta()) {
+                    syncThread.requestSync();
+                }
+            }
+
+            @Override
+            public void onResync() {
+                syncThread.requestSync();
+            }
+        });
+    }
+
+    // Runs tasks on the next server tick. Dropped once the plugin is disabled, onDisable applies what is left.
+    public Executor mainThread() {
+        return task -> {
+            if (isEnabled()) {
+                getServer().getScheduler().runTask(this, task);
+            }
+        };
+    }
+
+    public void LoadConfiguration() {
+        CONFIG.options().copyDefaults(true);
+        saveConfig();
+    }
+
+    public boolean LoadServices() {
+        String syncMode = CONFIG.getString("general.sync-mode", "");
+
+        // Backends are listed in META-INF/services, so new ones do not need changes here.
+        for (BaseService service : ServiceLoader.load(BaseService.class, getClassLoader())) {
+            if (service.getSyncMode().equalsIgnoreCase(syncMode)) {
+                whitelistService = service;
+                break;
+            }
+        }
+
+        if (whitelistService == null) {
+            LOGGER.severe("Please check what sync-mode is set in the config and make sure it is set to a supported mode!");
+            LOGGER.severe("Failed to setup Whitelist Sync Database!");
+            return false;
+        }
+        LOGGER.info("Database setup!");
+
+        // Loaded before the database is touched, so logins work from the first tick.
+        if (CONFIG.getBoolean("journal.enabled", true)) {
+            WhitelistJournal journal = new WhitelistJournal(new File(getDataFolder(), "journal"));
+            try {
+                journal.open();
+                whitelistService = new JournaledService(whitelistService, journal);
+            } catch (IOException e) {
+                LOGGER.severe("Failed to open the whitelist journal, continuing without it.");
+                e.printStackTrace();
+            }
+        }
+
+        if(!whitelistService.initializeDatabase()) {
+            LOGGER.severe("Error initializing whitelist sync database. Disabling mod functionality. Please correct errors and restart.");
+            return false;
+        }
+
+        if (CONFIG.getBoolean("general.sync-ops") && !whitelistService.supportsOps()) {
+            LOGGER.warning("Sync mode " + whitelistService.getSyncMode() + " does not support op syncing, general.sync-ops is ignored.");
+        }
+        return true;
+    }
+
+}
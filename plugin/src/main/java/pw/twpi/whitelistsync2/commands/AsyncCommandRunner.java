@@ -0,0 +1,118 @@
+package pw.twpi.whitelistsync2.commands;
+
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs the slow part of commands (database work, player lookups) off the main server thread
+ * and hands the results back to the main thread. Also keeps track of how long command handlers
+ * hold the main thread.
+ */
+public class AsyncCommandRunner {
+
+    private final JavaPlugin plugin;
+    private final ThreadPoolExecutor executor;
+
+    // Main thread time spent inside command handlers
+    private final AtomicLong handlerCount = new AtomicLong();
+    private final AtomicLong handlerNanos = new AtomicLong();
+    private final AtomicLong handlerMaxNanos = new AtomicLong();
+
+    public AsyncCommandRunner(JavaPlugin plugin, int threads) {
+        this.plugin = plugin;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        int poolSize = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "WhitelistSync2-command-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> work) {
+        return CompletableFuture.supplyAsync(work, executor);
+    }
+
+    // Run work on the command executor and pass its result to onMainThread on the main server thread.
+    public <T> CompletableFuture<T> run(CommandSender sender, Supplier<T> work, Consumer<T> onMainThread) {
+        CompletableFuture<T> future = supplyAsync(work);
+
+        future.whenComplete((result, error) -> runOnMainThread(() -> {
+            if (error != null) {
+                WhitelistSync2.LOGGER.severe("Error running whitelist command.");
+                error.printStackTrace();
+                sender.sendMessage("Error running command, see the server log!");
+            } else {
+                onMainThread.accept(result);
+            }
+        }));
+
+        return future;
+    }
+
+    // Run on the main server thread. Dropped if the plugin was disabled in the meantime.
+    public void runOnMainThread(Runnable task) {
+        if (plugin.isEnabled()) {
+            Bukkit.getScheduler().runTask(plugin, task);
+        }
+    }
+
+    // Send a message from any thread, delivered on the main thread.
+    public void sendMessage(CommandSender sender, String message) {
+        runOnMainThread(() -> sender.sendMessage(message));
+    }
+
+    public void recordHandlerTime(long nanos) {
+        handlerCount.incrementAndGet();
+        handlerNanos.addAndGet(nanos);
+        handlerMaxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    // Commands waiting for a free worker thread
+    public int getQueuedCommands() {
+        return executor.getQueue().size();
+    }
+
+    public long getHandlerCount() {
+        return handlerCount.get();
+    }
+
+    public double getAverageHandlerMillis() {
+        long count = handlerCount.get();
+        return count == 0 ? 0 : handlerNanos.get() / (double) count / 1_000_000.0;
+    }
+
+    public double getMaxHandlerMillis() {
+        return handlerMaxNanos.get() / 1_000_000.0;
+    }
+
+    public String describeTimings() {
+        return String.format("Main thread time in commands: %d commands, avg %.3fms, max %.3fms, total %.1fms",
+                getHandlerCount(), getAverageHandlerMillis(), getMaxHandlerMillis(), handlerNanos.get() / 1_000_000.0);
+    }
+
+    // Let running commands finish for a few seconds, then give up on them.
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package pw.twpi.whitelistsync2.commands;
+
+import pw.twpi.whitelistsync2.Utilities;
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.metrics.Metrics;
+import pw.twpi.whitelistsync2.service.BaseService;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.java.JavaPlugin;
+
+public class CommandWhitelist implements CommandExecutor {
+
+    private JavaPlugin plugin;
+    private BaseService service;
+    private Server server;
+    private AsyncCommandRunner runner;
+
+    private final String WL_MANAGE = "whitelistsync2.wl.manage";
+    private final String WL_VIEW = "whitelistsync2.wl.view";
+
+    public CommandWhitelist(JavaPlugin plugin, BaseService service, AsyncCommandRunner runner) {
+        this.plugin = plugin;
+        this.service = service;
+        this.server = plugin.getServer();
+        this.runner = runner;
+    }
+
+    public boolean onCommand(CommandSender sender, Command command, String primaryCommand, String[] args) {
+        long startTime = System.nanoTime();
+        try {
+            return handleCommand(sender, args);
+        } finally {
+            runner.recordHandlerTime(System.nanoTime() - startTime);
+        }
+    }
+
+    // Database work and player lookups run on the command runner. Only permission checks and replies happen here.
+    private boolean handleCommand(CommandSender sender, String[] args) {
+
+        if (args.length == 0) {
+            return false;
+        }
+        //Action for showing list
+        if (args[0].equalsIgnoreCase("list")) {
+            if(!(sender.hasPermission(WL_VIEW) || sender.hasPermission(WL_MANAGE)) && !sender.getName().equals("CONSOLE")) {
+                sender.sendMessage("You do not have permission to use this command.");
+                return true;
+            }
+
+            runner.run(sender,
+                    () -> Utilities.FormatWhitelistedPlayersOutput(service.getWhitelistedPlayersFromDatabase()),
+                    sender::sendMessage);
+
+            return true;
+        }
+        else if (args[0].equalsIgnoreCase("add")) {
+            // Actions for adding a player to whitelist
+            if(!sender.hasPermission(WL_MANAGE) && !sender.getName().equals("CONSOLE")) {
+                sender.sendMessage("You do not have permission to use this command.");
+                return true;
+            }
+
+            if (args.length > 1) {
+
+                // Looking up an offline player by name may ask Mojang, so it stays off the main thread too
+                runner.run(sender, () -> {
+                    OfflinePlayer user = Bukkit.getOfflinePlayer(args[1]);
+                    return user != null && service.addWhitelistPlayer(user) ? user : null;
+                }, user -> {
+                    if (user != null) {
+                        user.setWhitelisted(true);
+                        Bukkit.broadcast(sender.getName() + " added " + user.getName() + " to the whitelist.",WL_MANAGE);
+                        WhitelistSync2.LOGGER.info(sender.getName() + " added " + user.getName() + " to the whitelist.");
+                        sender.sendMessage("Added " + user.getName() + " to the whitelist.");
+                    } else {
+                        sender.sendMessage("Error adding " + args[1] + " to whitelist!");
+                    }
+                });
+
+            } else {
+                sender.sendMessage("You must specify a name to add to the whitelist!");
+            }
+
+            return true;
+        }
+        else if (args[0].equalsIgnoreCase("remove")) {
+            // Actions for removing player from whitelist
+            if(!sender.hasPermission(WL_MANAGE) && !sender.getName().equals("CONSOLE")) {
+                sender.sendMessage("You do not have permission to use this command.");
+                return true;
+            }
+
+            if (args.length > 1) {
+
+                runner.run(sender, () -> {
+                    OfflinePlayer player = Bukkit.getOfflinePlayer(args[1]);
+                    return player != null && service.removeWhitelistPlayer(player) ? player : null;
+                }, player -> {
+                    if (player != null) {
+                        player.setWhitelisted(false);
+                        Bukkit.broadcast(sender.getName() + " removed " + player.getName() + " from the whitelist.",WL_MANAGE);
+                        WhitelistSync2.LOGGER.info(sender.getName() + " removed " + player.getName() + " from the whitelist.");
+                        sender.sendMessage("Removed " + player.getName() + " from the whitelist.");
+                    } else {
+                        sender.sendMessage("Error removing " + args[1] + " from whitelist!");
+                    }
+                });
+
+            } else {
+                sender.sendMessage("You must specify a valid name to remove from the whitelist!");
+            }
+
+            return true;
+        }
+        else if (args[0].equalsIgnoreCase("sync")) {
+            // Sync Database to server
+            if(!sender.hasPermission(WL_MANAGE) && !sender.getName().equals("CONSOLE")) {
+                sender.sendMessage("You do not have permission to use this command.");
+                return true;
+            }
+
+            // On the sync thread, so it does not run alongside a scheduled sync
+            runner.run(sender, () -> WhitelistSync2.syncThread.syncAndWait(), success -> {
+                if (success) {
+                    sender.sendMessage("Local up to date with database!");
+                    if (service.getLastSyncResult() != null) {
+                        sender.sendMessage(service.getLastSyncResult().toString());
+                    }
+                } else {
+                    sender.sendMessage("Error syncing local to database!");
+                }
+            });
+
+            return true;
+        }
+        else if (args[0].equalsIgnoreCase("copyservertodatabase")) {
+            // Sync server to database
+            if(!sender.hasPermission(WL_MANAGE) && !sender.getName().equals("CONSOLE")) {
+                sender.sendMessage("You do not have permission to use this command.");
+                return true;
+            }
+
+            runner.run(sender, () -> service.copyLocalWhitelistedPlayersToDatabase(message -> runner.sendMessage(sender, message)), success -> {
+                if (success) {
+                    sender.sendMessage("Pushed local to database!");
+                } else {
+                    sender.sendMessage("Error pushing local to database!");
+                }
+            });
+
+            return true;
+        }
+        else if (args[0].equalsIgnoreCase("pool")) {
+            // Show database connection pool usage
+            if(!sender.hasPermission(WL_MANAGE) && !sender.getName().equals("CONSOLE")) {
+                sender.sendMessage("You do not have permission to use this command.");
+                return true;
+            }
+
+            if (service.getConnectionPool() != null) {
+                sender.sendMessage(service.getConnectionPool().toString());
+            } else {
+                sender.sendMessage("This sync mode does not use a connection pool.");
+            }
+
+            return true;
+        }
+        else if (args[0].equalsIgnoreCase("timings")) {
+            // Show how long command handlers held the main thread
+            if(!sender.hasPermission(WL_MANAGE) && !sender.getName().equals("CONSOLE")) {
+                sender.sendMessage("You do not have permission to use this command.");
+                return true;
+            }
+
+            sender.sendMessage(runner.describeTimings());
+            sender.sendMessage(WhitelistSync2.whitelistApplier.describeTimings());
+            if (service.supportsOps()) {
+                sender.sendMessage(WhitelistSync2.opApplier.describeTimings());
+            }
+            sender.sendMessage(WhitelistSync2.loginListener.describeTimings());
+
+            return true;
+        }
+        else if (args[0].equalsIgnoreCase("stats")) {
+            // Counters, queue depths and latency percentiles recorded since startup
+            if(!sender.hasPermission(WL_MANAGE) && !sender.getName().equals("CONSOLE")) {
+                sender.sendMessage("You do not have permission to use this command.");
+                return true;
+            }
+
+            for (String line : Metrics.describe()) {
+                sender.sendMessage(line);
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+}
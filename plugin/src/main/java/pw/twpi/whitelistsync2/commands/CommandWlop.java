@@ -0,0 +1,164 @@
+package pw.twpi.whitelistsync2.commands;
+
+import pw.twpi.whitelistsync2.Utilities;
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.service.BaseService;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.java.JavaPlugin;
+
+public class CommandWlop implements CommandExecutor {
+
+    private JavaPlugin plugin;
+    private BaseService service;
+    private Server server;
+    private AsyncCommandRunner runner;
+
+    private final String WLOP_MANAGE = "whitelistsync2.wlop.manage";
+    private final String WLOP_VIEW = "whitelistsync2.wlop.view";
+
+    public CommandWlop(JavaPlugin plugin, BaseService service, AsyncCommandRunner runner) {
+        this.plugin = plugin;
+        this.service = service;
+        this.server = plugin.getServer();
+        this.runner = runner;
+    }
+
+    public boolean onCommand(CommandSender sender, Command command, String primaryCommand, String[] args) {
+        long startTime = System.nanoTime();
+        try {
+            return handleCommand(sender, args);
+        } finally {
+            runner.recordHandlerTime(System.nanoTime() - startTime);
+        }
+    }
+
+    // Same split as /wl: database work runs on the command runner, replies and setOp on the main thread.
+    private boolean handleCommand(CommandSender sender, String[] args) {
+
+        if (args.length == 0) {
+            return false;
+        }
+
+        if (!service.supportsOps()) {
+            sender.sendMessage("Op syncing is disabled. Set general.sync-ops to true and use the SQLITE or MYSQL sync mode.");
+            return true;
+        }
+
+        //Action for showing list
+        if (args[0].equalsIgnoreCase("list")) {
+            if(!(sender.hasPermission(WLOP_VIEW) || sender.hasPermission(WLOP_MANAGE)) && !sender.getName().equals("CONSOLE")) {
+                sender.sendMessage("You do not have permission to use this command.");
+                return true;
+            }
+
+            runner.run(sender,
+                    () -> Utilities.FormatOppedPlayersOutput(service.getOppedPlayersFromDatabase()),
+                    sender::sendMessage);
+
+            return true;
+        }
+        else if (args[0].equalsIgnoreCase("op")) {
+            // Actions for opping a player
+            if(!sender.hasPermission(WLOP_MANAGE) && !sender.getName().equals("CONSOLE")) {
+                sender.sendMessage("You do not have permission to use this command.");
+                return true;
+            }
+
+            if (args.length > 1) {
+
+                runner.run(sender, () -> {
+                    OfflinePlayer user = Bukkit.getOfflinePlayer(args[1]);
+                    return user != null && service.addOppedPlayer(user) ? user : null;
+                }, user -> {
+                    if (user != null) {
+                        user.setOp(true);
+                        Bukkit.broadcast(sender.getName() + " opped " + user.getName() + ".", WLOP_MANAGE);
+                        WhitelistSync2.LOGGER.info(sender.getName() + " opped " + user.getName() + ".");
+                        sender.sendMessage("Opped " + user.getName() + ".");
+                    } else {
+                        sender.sendMessage("Error opping " + args[1] + "!");
+                    }
+                });
+
+            } else {
+                sender.sendMessage("You must specify a name to op!");
+            }
+
+            return true;
+        }
+        else if (args[0].equalsIgnoreCase("deop")) {
+            // Actions for deopping a player
+            if(!sender.hasPermission(WLOP_MANAGE) && !sender.getName().equals("CONSOLE")) {
+                sender.sendMessage("You do not have permission to use this command.");
+                return true;
+            }
+
+            if (args.length > 1) {
+
+                runner.run(sender, () -> {
+                    OfflinePlayer player = Bukkit.getOfflinePlayer(args[1]);
+                    return player != null && service.removeOppedPlayer(player) ? player : null;
+                }, player -> {
+                    if (player != null) {
+                        player.setOp(false);
+                        Bukkit.broadcast(sender.getName() + " deopped " + player.getName() + ".", WLOP_MANAGE);
+                        WhitelistSync2.LOGGER.info(sender.getName() + " deopped " + player.getName() + ".");
+                        sender.sendMessage("Deopped " + player.getName() + ".");
+                    } else {
+                        sender.sendMessage("Error deopping " + args[1] + "!");
+                    }
+                });
+
+            } else {
+                sender.sendMessage("You must specify a valid name to deop!");
+            }
+
+            return true;
+        }
+        else if (args[0].equalsIgnoreCase("sync")) {
+            // Sync Database to server
+            if(!sender.hasPermission(WLOP_MANAGE) && !sender.getName().equals("CONSOLE")) {
+                sender.sendMessage("You do not have permission to use this command.");
+                return true;
+            }
+
+            // On the sync thread, so it does not run alongside a scheduled sync
+            runner.run(sender, () -> service.supportsOps() && WhitelistSync2.syncThread.syncAndWait(), success -> {
+                if (success) {
+                    sender.sendMessage("Local op list up to date with database!");
+                    if (service.getLastOpSyncResult() != null) {
+                        sender.sendMessage(service.getLastOpSyncResult().toString());
+                    }
+                } else {
+                    sender.sendMessage("Error syncing local op list to database!");
+                }
+            });
+
+            return true;
+        }
+        else if (args[0].equalsIgnoreCase("copyservertodatabase")) {
+            // Sync server to database
+            if(!sender.hasPermission(WLOP_MANAGE) && !sender.getName().equals("CONSOLE")) {
+                sender.sendMessage("You do not have permission to use this command.");
+                return true;
+            }
+
+            runner.run(sender, () -> service.copyLocalOppedPlayersToDatabase(message -> runner.sendMessage(sender, message)), success -> {
+                if (success) {
+                    sender.sendMessage("Pushed local op list to database!");
+                } else {
+                    sender.sendMessage("Error pushing local op list to database!");
+                }
+            });
+
+            return true;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,109 @@
+package pw.twpi.whitelistsync2.json;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.models.OppedPlayer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * Class to read json data from the server's ops.json file.
+ * The op level and bypassesPlayerLimit fields are not synced and skipped.
+ */
+public class OppedPlayersFileUtilities {
+
+    /**
+     * Receives players from {@link #forEachOppedPlayer} as they are read.
+     * May throw, e.g. when writing each player to a database; reading stops and the exception is passed on.
+     */
+    @FunctionalInterface
+    public interface PlayerConsumer<E extends Exception> {
+        void accept(OppedPlayer player) throws E;
+    }
+
+    // Get Arraylist of opped players on server.
+    public static ArrayList<OppedPlayer> getOppedPlayers() {
+        ArrayList<OppedPlayer> users = new ArrayList<>();
+        forEachOppedPlayer(users::add);
+        return users;
+    }
+
+    /**
+     * Read the server's ops.json one entry at a time.
+     * @return false if the file could not be read completely. Players read before the error have already been passed on.
+     */
+    public static <E extends Exception> boolean forEachOppedPlayer(PlayerConsumer<E> consumer) throws E {
+        try (InputStream in = Files.newInputStream(getOpsPath())) {
+            readOppedPlayers(in, consumer);
+            return true;
+        } catch (NoSuchFileException e) {
+            WhitelistSync2.LOGGER.severe("ops.json file not found.");
+            e.printStackTrace();
+        } catch (MalformedJsonException | IllegalStateException e) {
+            // Invalid json, or json that is not a list of players
+            WhitelistSync2.LOGGER.severe("ops.json parse error.");
+            e.printStackTrace();
+        } catch (IOException e) {
+            WhitelistSync2.LOGGER.severe("ops.json read error.");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    static Path getOpsPath() {
+        return Paths.get(WhitelistSync2.SERVER_FILEPATH, "ops.json");
+    }
+
+    // Parse ops.json content, leaving error handling to the caller.
+    static <E extends Exception> void readOppedPlayers(InputStream in, PlayerConsumer<E> consumer) throws IOException, E {
+        JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            OppedPlayer player = readPlayer(reader);
+            if (player != null) {
+                consumer.accept(player);
+            }
+        }
+        reader.endArray();
+    }
+
+    // Read one {"uuid": ..., "name": ..., "level": ...} entry. Entries without a uuid are skipped.
+    private static OppedPlayer readPlayer(JsonReader reader) throws IOException {
+        String uuid = null;
+        String name = "";
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if (field.equals("uuid")) {
+                uuid = reader.nextString();
+            } else if (field.equals("name")) {
+                name = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (uuid == null) {
+            return null;
+        }
+
+        return new OppedPlayer(uuid, name, true);
+    }
+}
@@ -0,0 +1,184 @@
+package pw.twpi.whitelistsync2.json;
+
+import com.google.gson.stream.MalformedJsonException;
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Keeps the last parsed copy of the server's whitelist.json so it is only read again after it changed.
+ * A WatchService marks the copy stale when the file is written. Without a watcher the file's
+ * modification time and size are checked on every read instead.
+ */
+public class WhitelistFileCache {
+
+    /**
+     * Parsed whitelist.json. The version only goes up when the content changed, so consumers can skip
+     * work when they already handled this version.
+     */
+    public static final class Snapshot {
+        private final List<WhitelistedPlayer> players;
+        private final long version;
+        private final long lastModified;
+        private final long size;
+        private final long hash;
+
+        private Snapshot(List<WhitelistedPlayer> players, long version, long lastModified, long size, long hash) {
+            this.players = players;
+            this.version = version;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.hash = hash;
+        }
+
+        // Unmodifiable
+        public List<WhitelistedPlayer> getPlayers() {
+            return players;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+
+    private static final Snapshot EMPTY = new Snapshot(Collections.emptyList(), 0, -1, -1, 0);
+
+    private static final Object lock = new Object();
+    private static volatile Snapshot current = EMPTY;
+    private static volatile boolean stale = true;
+
+    private static volatile WatchService watchService;
+
+    // Watch the server directory for writes to whitelist.json.
+    public static synchronized void start() {
+        if (watchService != null) {
+            return;
+        }
+
+        Path file = WhitelistedPlayersFileUtilities.getWhitelistPath();
+        try {
+            watchService = file.getFileSystem().newWatchService();
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            WhitelistSync2.LOGGER.warning("Could not watch whitelist.json for changes, checking its modification time on every sync instead.");
+            e.printStackTrace();
+            watchService = null;
+            return;
+        }
+
+        WatchService service = watchService;
+        Thread thread = new Thread(() -> watch(service, file.getFileName()), "WhitelistSync2-file-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static synchronized void stop() {
+        if (watchService == null) {
+            return;
+        }
+
+        try {
+            watchService.close();
+        } catch (IOException ignored) {
+        }
+        watchService = null;
+        stale = true;
+    }
+
+    public static List<WhitelistedPlayer> getPlayers() {
+        return getSnapshot().getPlayers();
+    }
+
+    // Current content of whitelist.json. If it cannot be read, the last good copy is returned and reading is retried next time.
+    public static Snapshot getSnapshot() {
+        if (!stale && watchService != null) {
+            return current;
+        }
+
+        synchronized (lock) {
+            // Cleared before reading, so a write that lands during the read marks the copy stale again.
+            stale = false;
+            Snapshot snapshot = current;
+            Path file = WhitelistedPlayersFileUtilities.getWhitelistPath();
+
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                long lastModified = attributes.lastModifiedTime().toMillis();
+                long size = attributes.size();
+                // A watched file is read again on every event, as a rewrite can keep both the size and the modification time.
+                if (watchService == null && lastModified == snapshot.lastModified && size == snapshot.size) {
+                    return snapshot;
+                }
+
+                List<WhitelistedPlayer> players = new ArrayList<>();
+                CRC32 crc = new CRC32();
+                try (InputStream in = new CheckedInputStream(Files.newInputStream(file), crc)) {
+                    WhitelistedPlayersFileUtilities.readWhitelistedPlayers(in, players::add);
+                }
+
+                // Touched but not changed, keep the old players and version.
+                long hash = crc.getValue();
+                long version = hash == snapshot.hash && size == snapshot.size ? snapshot.version : snapshot.version + 1;
+                current = new Snapshot(version == snapshot.version ? snapshot.players : Collections.unmodifiableList(players),
+                        version, lastModified, size, hash);
+                return current;
+            } catch (NoSuchFileException e) {
+                if (snapshot != EMPTY) {
+                    WhitelistSync2.LOGGER.warning("whitelist.json was deleted, treating the server whitelist as empty.");
+                }
+                current = EMPTY;
+                return current;
+            } catch (EOFException | MalformedJsonException | IllegalStateException e) {
+                // The server may be halfway through writing the file, try again on the next read.
+                WhitelistSync2.LOGGER.warning("whitelist.json parse error, using the last copy that could be read.");
+                stale = true;
+            } catch (IOException e) {
+                WhitelistSync2.LOGGER.severe("whitelist.json read error.");
+                e.printStackTrace();
+                stale = true;
+            }
+
+            return snapshot;
+        }
+    }
+
+    private static void watch(WatchService service, Path fileName) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    // On overflow events were lost, so the file may have changed.
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context())) {
+                        stale = true;
+                    }
+                }
+
+                if (!key.reset()) {
+                    // The directory is gone, fall back to checking the file on every read.
+                    WhitelistSync2.LOGGER.warning("Stopped watching whitelist.json, the server directory is no longer accessible.");
+                    stop();
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package pw.twpi.whitelistsync2.json;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+
+/**
+ * Class to read json data from the server's whitelist.json file
+ * @author Richard Nader, Jr. <rmnader@svsu.edu>
+ */
+public class WhitelistedPlayersFileUtilities {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Receives players from {@link #forEachWhitelistedPlayer} as they are read.
+     * May throw, e.g. when writing each player to a database; reading stops and the exception is passed on.
+     */
+    @FunctionalInterface
+    public interface PlayerConsumer<E extends Exception> {
+        void accept(WhitelistedPlayer player) throws E;
+    }
+
+    // Get Arraylist of whitelisted players on server.
+    public static ArrayList<WhitelistedPlayer> getWhitelistedPlayers() {
+        ArrayList<WhitelistedPlayer> users = new ArrayList<>();
+        forEachWhitelistedPlayer(users::add);
+        return users;
+    }
+
+    /**
+     * Read the server's whitelist.json one entry at a time, without building the whole document in memory.
+     * @return false if the file could not be read completely. Players read before the error have already been passed on.
+     */
+    public static <E extends Exception> boolean forEachWhitelistedPlayer(PlayerConsumer<E> consumer) throws E {
+        try (InputStream in = Files.newInputStream(getWhitelistPath())) {
+            readWhitelistedPlayers(in, consumer);
+            return true;
+        } catch (NoSuchFileException e) {
+            WhitelistSync2.LOGGER.severe("whitelist.json file not found.");
+            e.printStackTrace();
+        } catch (MalformedJsonException | IllegalStateException e) {
+            // Invalid json, or json that is not a list of players
+            WhitelistSync2.LOGGER.severe("whitelist.json parse error.");
+            e.printStackTrace();
+        } catch (IOException e) {
+            WhitelistSync2.LOGGER.severe("whitelist.json read error.");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    static Path getWhitelistPath() {
+        return Paths.get(WhitelistSync2.SERVER_FILEPATH, "whitelist.json");
+    }
+
+    // Parse whitelist.json content, leaving error handling to the caller.
+    static <E extends Exception> void readWhitelistedPlayers(InputStream in, PlayerConsumer<E> consumer) throws IOException, E {
+        JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), READ_BUFFER_SIZE));
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            WhitelistedPlayer player = readPlayer(reader);
+            if (player != null) {
+                consumer.accept(player);
+            }
+        }
+        reader.endArray();
+    }
+
+    // Read one {"uuid": ..., "name": ...} entry. Entries without a uuid are skipped.
+    private static WhitelistedPlayer readPlayer(JsonReader reader) throws IOException {
+        String uuid = null;
+        String name = "";
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if (field.equals("uuid")) {
+                uuid = reader.nextString();
+            } else if (field.equals("name")) {
+                name = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (uuid == null) {
+            return null;
+        }
+
+        // Create DTO
+        return new WhitelistedPlayer(uuid, name, true);
+    }
+
+}
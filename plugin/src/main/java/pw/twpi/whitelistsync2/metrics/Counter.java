@@ -0,0 +1,23 @@
+package pw.twpi.whitelistsync2.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count that only goes up. Increments from many threads do not contend.
+ */
+public class Counter {
+
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+}
@@ -0,0 +1,179 @@
+package pw.twpi.whitelistsync2.metrics;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registry of the plugin's counters, gauges and histograms.
+ * Metrics are registered once, usually into static fields, and looked up by name and labels.
+ * Registering the same name and labels again returns the existing metric, so reloads do not duplicate them.
+ * Gauges are replaced instead, as they read state of the current plugin instance.
+ */
+public final class Metrics {
+
+    public static final String PREFIX = "whitelistsync_";
+
+    private static final Map<String, Family> families = new LinkedHashMap<>();
+
+    private Metrics() {
+    }
+
+    // All metrics with one name, differing only in labels
+    private static final class Family {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final Map<String, Object> children = new LinkedHashMap<>();
+
+        private Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    public static Counter counter(String name, String help, String... labels) {
+        return (Counter) register(name, help, "counter", labels, new Counter(), false);
+    }
+
+    public static Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) register(name, help, "histogram", labels, new Histogram(), false);
+    }
+
+    public static void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        register(name, help, "gauge", labels, value, true);
+    }
+
+    // Timer for one operation of the active sync backend.
+    public static Histogram operation(String operation) {
+        return histogram("operation_seconds", "Time taken by whitelist service operations.", "operation", operation);
+    }
+
+    private static synchronized Object register(String name, String help, String type, String[] labels, Object metric, boolean replace) {
+        Family family = families.computeIfAbsent(name, key -> new Family(key, help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        }
+
+        String key = formatLabels(labels);
+        Object existing = family.children.get(key);
+        if (existing != null && !replace) {
+            return existing;
+        }
+        family.children.put(key, metric);
+        return metric;
+    }
+
+    /**
+     * Everything in the Prometheus text format, version 0.0.4. Histograms are exported in seconds.
+     */
+    public static synchronized String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Family family : families.values()) {
+            String name = PREFIX + family.name;
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+
+            for (Map.Entry<String, Object> child : family.children.entrySet()) {
+                String labels = child.getKey();
+                Object metric = child.getValue();
+
+                if (metric instanceof Counter) {
+                    out.append(name).append(wrap(labels)).append(' ').append(((Counter) metric).get()).append('\n');
+                } else if (metric instanceof DoubleSupplier) {
+                    out.append(name).append(wrap(labels)).append(' ').append(formatDouble(readGauge((DoubleSupplier) metric))).append('\n');
+                } else {
+                    Histogram histogram = (Histogram) metric;
+                    long[] counts = histogram.getBucketCounts();
+                    long cumulative = 0;
+                    for (int i = 0; i < counts.length; i++) {
+                        cumulative += counts[i];
+                        String le = i < Histogram.BOUNDS.length ? BigDecimal.valueOf(Histogram.BOUNDS[i], 9).stripTrailingZeros().toPlainString() : "+Inf";
+                        out.append(name).append("_bucket").append(wrap(join(labels, "le=\"" + le + "\"")))
+                                .append(' ').append(cumulative).append('\n');
+                    }
+                    out.append(name).append("_sum").append(wrap(labels)).append(' ')
+                            .append(formatDouble(histogram.getSumNanos() / 1e9)).append('\n');
+                    out.append(name).append("_count").append(wrap(labels)).append(' ').append(cumulative).append('\n');
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    // One line per metric for /wl stats. Histograms without any recordings are left out.
+    public static synchronized List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        for (Family family : families.values()) {
+            for (Map.Entry<String, Object> child : family.children.entrySet()) {
+                String name = family.name + wrap(child.getKey());
+                Object metric = child.getValue();
+
+                if (metric instanceof Counter) {
+                    lines.add(name + ": " + ((Counter) metric).get());
+                } else if (metric instanceof DoubleSupplier) {
+                    lines.add(name + ": " + formatDouble(readGauge((DoubleSupplier) metric)));
+                } else {
+                    Histogram histogram = (Histogram) metric;
+                    long count = histogram.getCount();
+                    if (count > 0) {
+                        lines.add(String.format(Locale.ROOT, "%s: %d, avg %.3fms, p50 %.3fms, p99 %.3fms, max %.3fms",
+                                name, count, histogram.getSumNanos() / (double) count / 1e6,
+                                histogram.getQuantileNanos(0.5) / 1e6, histogram.getQuantileNanos(0.99) / 1e6,
+                                histogram.getMaxNanos() / 1e6));
+                    }
+                }
+            }
+        }
+        return lines;
+    }
+
+    // Gauges read state that may be torn down, e.g. a closed pool. Report those as not a number.
+    private static double readGauge(DoubleSupplier gauge) {
+        try {
+            return gauge.getAsDouble();
+        } catch (RuntimeException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name and value pairs");
+        }
+
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return out.toString();
+    }
+
+    private static String join(String labels, String label) {
+        return labels.isEmpty() ? label : labels + "," + label;
+    }
+
+    private static String wrap(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    private static String formatDouble(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,97 @@
+package pw.twpi.whitelistsync2.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import pw.twpi.whitelistsync2.WhitelistSync2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes {@link Metrics} for Prometheus, over HTTP at /metrics, as a file rewritten on an interval, or both.
+ * The HTTP server uses the JDK's built-in server and binds to localhost unless configured otherwise.
+ */
+public class MetricsServer {
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private ScheduledExecutorService fileWriter;
+
+    public void start() {
+        int port = WhitelistSync2.CONFIG.getInt("metrics.port", 0);
+        if (port > 0) {
+            String bind = WhitelistSync2.CONFIG.getString("metrics.bind", "127.0.0.1");
+            try {
+                server = HttpServer.create(new InetSocketAddress(bind, port), 0);
+                server.createContext("/metrics", exchange -> {
+                    byte[] body = Metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                });
+                // One thread is plenty for a scraper every few seconds
+                serverExecutor = Executors.newSingleThreadExecutor(r -> {
+                    Thread thread = new Thread(r, "WhitelistSync2-metrics");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                server.setExecutor(serverExecutor);
+                server.start();
+                WhitelistSync2.LOGGER.info("Serving metrics at http://" + bind + ":" + port + "/metrics");
+            } catch (IOException e) {
+                WhitelistSync2.LOGGER.severe("Failed to start the metrics endpoint on " + bind + ":" + port + "!");
+                e.printStackTrace();
+            }
+        }
+
+        String file = WhitelistSync2.CONFIG.getString("metrics.file", "");
+        if (file != null && !file.isEmpty()) {
+            long interval = Math.max(1, WhitelistSync2.CONFIG.getLong("metrics.file-interval", 15));
+            Path path = Paths.get(file);
+            fileWriter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "WhitelistSync2-metrics-file");
+                thread.setDaemon(true);
+                return thread;
+            });
+            fileWriter.scheduleWithFixedDelay(() -> writeFile(path), interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        // The server does not shut down an executor it was given
+        if (serverExecutor != null) {
+            serverExecutor.shutdownNow();
+            serverExecutor = null;
+        }
+        if (fileWriter != null) {
+            fileWriter.shutdownNow();
+            fileWriter = null;
+        }
+    }
+
+    // Replaced in one step, so a collector reading the file never sees half of it.
+    private static void writeFile(Path path) {
+        try {
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(tmp, Metrics.toPrometheus().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            WhitelistSync2.LOGGER.warning("Failed to write metrics to " + path + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package pw.twpi.whitelistsync2.models;
+
+/**
+ * Bloom filter over the UUIDs and lowercase names of an index, so logins from unknown players can be
+ * turned away without a table lookup. A miss is definite, a hit still has to be checked against the index.
+ * Sized for about 1% false positives. Filled once when an index is built, read-only afterwards.
+ */
+final class BloomFilter {
+
+    private static final int HASHES = 7;
+
+    private final long[] bits;
+    private final long mask;
+
+    BloomFilter(int expectedSize) {
+        // At least 10 bits per entry, rounded up to a power of two so probes need no division
+        long size = Long.highestOneBit(Math.max(64L, expectedSize * 10L) * 2 - 1);
+        this.bits = new long[(int) (size >>> 6)];
+        this.mask = size - 1;
+    }
+
+    void addUuid(long most, long least) {
+        add(mix(most * 0x9E3779B97F4A7C15L ^ least));
+    }
+
+    void addName(String lowerName) {
+        add(mix(lowerName.hashCode() ^ 0xC2B2AE3D27D4EB4FL));
+    }
+
+    boolean mightContainUuid(long most, long least) {
+        return mightContain(mix(most * 0x9E3779B97F4A7C15L ^ least));
+    }
+
+    boolean mightContainName(String lowerName) {
+        return mightContain(mix(lowerName.hashCode() ^ 0xC2B2AE3D27D4EB4FL));
+    }
+
+    // Probe positions are h1 + i * h2, the two halves of one 64-bit hash
+    private void add(long hash) {
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = (h1 + i * h2) & mask;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private boolean mightContain(long hash) {
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = (h1 + i * h2) & mask;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
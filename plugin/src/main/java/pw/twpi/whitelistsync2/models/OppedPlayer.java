@@ -0,0 +1,29 @@
+package pw.twpi.whitelistsync2.models;
+
+/**
+ * An entry of the op list, either a row of the op table or of the server's ops.json.
+ */
+public class OppedPlayer {
+
+    private final String uuid;
+    private final String name;
+    private final boolean isOp;
+
+    public OppedPlayer(String uuid, String name, boolean isOp) {
+        this.uuid = uuid;
+        this.name = name;
+        this.isOp = isOp;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isOp() {
+        return isOp;
+    }
+}
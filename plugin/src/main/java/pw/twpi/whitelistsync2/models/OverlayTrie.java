@@ -0,0 +1,236 @@
+package pw.twpi.whitelistsync2.models;
+
+import java.util.function.Consumer;
+
+/**
+ * Persistent hash trie holding the entries changed since a {@link WhitelistIndex} was built, keyed either by UUID
+ * or by lowercase name. Adding an entry copies only the path to it, a few small arrays, and leaves this trie as it was.
+ * Lookups walk at most seven levels and do not allocate.
+ */
+final class OverlayTrie {
+
+    static final OverlayTrie EMPTY = new OverlayTrie(null, 0);
+
+    private static final int BITS = 5;
+
+    // One key and its player. UUID keyed entries have no name.
+    static final class Entry {
+        final int hash;
+        final long most;
+        final long least;
+        final String name;
+        final WhitelistedPlayer player;
+
+        private Entry(int hash, long most, long least, String name, WhitelistedPlayer player) {
+            this.hash = hash;
+            this.most = most;
+            this.least = least;
+            this.name = name;
+            this.player = player;
+        }
+
+        private boolean sameKey(Entry other) {
+            return name != null ? name.equals(other.name) : other.name == null && most == other.most && least == other.least;
+        }
+    }
+
+    // Children are entries, nodes or collisions, in the order of their bits in the bitmap
+    private static final class Node {
+        final int bitmap;
+        final Object[] children;
+
+        private Node(int bitmap, Object[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+    }
+
+    // Entries whose keys share the full hash
+    private static final class Collision {
+        final int hash;
+        final Entry[] entries;
+
+        private Collision(int hash, Entry[] entries) {
+            this.hash = hash;
+            this.entries = entries;
+        }
+    }
+
+    private final Object root;
+    private final int size;
+
+    private OverlayTrie(Object root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    // Number of keys.
+    int size() {
+        return size;
+    }
+
+    OverlayTrie putUuid(long most, long least, WhitelistedPlayer player) {
+        return put(new Entry(hashUuid(most, least), most, least, null, player));
+    }
+
+    OverlayTrie putName(String lowerName, WhitelistedPlayer player) {
+        return put(new Entry(hashName(lowerName), 0, 0, lowerName, player));
+    }
+
+    // The entry for the key, or null if it was never put.
+    Entry getUuid(long most, long least) {
+        int hash = hashUuid(most, least);
+        Object node = root;
+        for (int shift = 0; ; shift += BITS) {
+            if (node instanceof Node) {
+                node = child((Node) node, hash, shift);
+            } else if (node instanceof Entry) {
+                Entry entry = (Entry) node;
+                return entry.name == null && entry.most == most && entry.least == least ? entry : null;
+            } else if (node instanceof Collision) {
+                for (Entry entry : ((Collision) node).entries) {
+                    if (entry.name == null && entry.most == most && entry.least == least) {
+                        return entry;
+                    }
+                }
+                return null;
+            } else {
+                return null;
+            }
+        }
+    }
+
+    Entry getName(String lowerName) {
+        int hash = hashName(lowerName);
+        Object node = root;
+        for (int shift = 0; ; shift += BITS) {
+            if (node instanceof Node) {
+                node = child((Node) node, hash, shift);
+            } else if (node instanceof Entry) {
+                Entry entry = (Entry) node;
+                return entry.hash == hash && lowerName.equals(entry.name) ? entry : null;
+            } else if (node instanceof Collision) {
+                for (Entry entry : ((Collision) node).entries) {
+                    if (lowerName.equals(entry.name)) {
+                        return entry;
+                    }
+                }
+                return null;
+            } else {
+                return null;
+            }
+        }
+    }
+
+    void forEach(Consumer<Entry> action) {
+        forEach(root, action);
+    }
+
+    private OverlayTrie put(Entry entry) {
+        boolean[] added = {false};
+        Object newRoot = put(root, entry, 0, added);
+        return new OverlayTrie(newRoot, added[0] ? size + 1 : size);
+    }
+
+    private static Object put(Object node, Entry entry, int shift, boolean[] added) {
+        if (node == null) {
+            added[0] = true;
+            return entry;
+        }
+
+        if (node instanceof Entry) {
+            Entry existing = (Entry) node;
+            if (existing.sameKey(entry)) {
+                return entry;
+            }
+            added[0] = true;
+            if (existing.hash == entry.hash) {
+                return new Collision(entry.hash, new Entry[]{existing, entry});
+            }
+            return split(existing, existing.hash, entry, shift);
+        }
+
+        if (node instanceof Collision) {
+            Collision collision = (Collision) node;
+            if (collision.hash != entry.hash) {
+                added[0] = true;
+                return split(collision, collision.hash, entry, shift);
+            }
+            Entry[] entries = collision.entries;
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i].sameKey(entry)) {
+                    Entry[] copy = entries.clone();
+                    copy[i] = entry;
+                    return new Collision(entry.hash, copy);
+                }
+            }
+            added[0] = true;
+            Entry[] copy = new Entry[entries.length + 1];
+            System.arraycopy(entries, 0, copy, 0, entries.length);
+            copy[entries.length] = entry;
+            return new Collision(entry.hash, copy);
+        }
+
+        Node parent = (Node) node;
+        int bit = 1 << ((entry.hash >>> shift) & 31);
+        int index = Integer.bitCount(parent.bitmap & (bit - 1));
+        if ((parent.bitmap & bit) != 0) {
+            Object[] children = parent.children.clone();
+            children[index] = put(children[index], entry, shift + BITS, added);
+            return new Node(parent.bitmap, children);
+        }
+
+        added[0] = true;
+        Object[] children = new Object[parent.children.length + 1];
+        System.arraycopy(parent.children, 0, children, 0, index);
+        children[index] = entry;
+        System.arraycopy(parent.children, index, children, index + 1, parent.children.length - index);
+        return new Node(parent.bitmap | bit, children);
+    }
+
+    // A node holding an existing entry or collision and a new entry with a different hash.
+    private static Node split(Object existing, int existingHash, Entry entry, int shift) {
+        int existingBits = (existingHash >>> shift) & 31;
+        int entryBits = (entry.hash >>> shift) & 31;
+        if (existingBits == entryBits) {
+            return new Node(1 << existingBits, new Object[]{split(existing, existingHash, entry, shift + BITS)});
+        }
+        Object[] children = existingBits < entryBits ? new Object[]{existing, entry} : new Object[]{entry, existing};
+        return new Node((1 << existingBits) | (1 << entryBits), children);
+    }
+
+    private static Object child(Node node, int hash, int shift) {
+        int bit = 1 << ((hash >>> shift) & 31);
+        if ((node.bitmap & bit) == 0) {
+            return null;
+        }
+        return node.children[Integer.bitCount(node.bitmap & (bit - 1))];
+    }
+
+    private static void forEach(Object node, Consumer<Entry> action) {
+        if (node instanceof Entry) {
+            action.accept((Entry) node);
+        } else if (node instanceof Collision) {
+            for (Entry entry : ((Collision) node).entries) {
+                action.accept(entry);
+            }
+        } else if (node instanceof Node) {
+            for (Object child : ((Node) node).children) {
+                forEach(child, action);
+            }
+        }
+    }
+
+    private static int hashUuid(long most, long least) {
+        long h = most * 0x9E3779B97F4A7C15L ^ least;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static int hashName(String lowerName) {
+        int h = lowerName.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
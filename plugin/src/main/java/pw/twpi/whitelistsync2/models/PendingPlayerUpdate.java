@@ -0,0 +1,50 @@
+package pw.twpi.whitelistsync2.models;
+
+/**
+ * Database update recorded at login that has not been written yet.
+ * bindName is set when a name-only entry connected and its UUID must be stored,
+ * newName is set when the player connected under a different name.
+ */
+public class PendingPlayerUpdate {
+
+    private String uuid;
+    private String bindName;
+    private String newName;
+
+    public PendingPlayerUpdate() {
+    }
+
+    public PendingPlayerUpdate(String uuid, String bindName, String newName) {
+        this.uuid = uuid;
+        this.bindName = bindName;
+        this.newName = newName;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getBindName() {
+        return bindName;
+    }
+
+    public String getNewName() {
+        return newName;
+    }
+
+    // Combine with a later update for the same UUID. The first bind and the last rename win.
+    public PendingPlayerUpdate merge(PendingPlayerUpdate later) {
+        return new PendingPlayerUpdate(uuid,
+                bindName != null ? bindName : later.bindName,
+                later.newName != null ? later.newName : newName);
+    }
+
+    @Override
+    public String toString() {
+        return "PendingPlayerUpdate{" +
+                "uuid='" + uuid + '\'' +
+                ", bindName='" + bindName + '\'' +
+                ", newName='" + newName + '\'' +
+                '}';
+    }
+}
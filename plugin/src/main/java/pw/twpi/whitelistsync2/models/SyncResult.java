@@ -0,0 +1,60 @@
+package pw.twpi.whitelistsync2.models;
+
+/**
+ * Outcome of one database to server sync.
+ */
+public class SyncResult {
+
+    private final boolean full;
+    private final int rowsRead;
+    private final int added;
+    private final int removed;
+    private final long readMillis;
+    private final long applyMillis;
+
+    public SyncResult(boolean full, int rowsRead, int added, int removed, long readMillis, long applyMillis) {
+        this.full = full;
+        this.rowsRead = rowsRead;
+        this.added = added;
+        this.removed = removed;
+        this.readMillis = readMillis;
+        this.applyMillis = applyMillis;
+    }
+
+    // Whether the whole table was read, rather than only the change log since the last sync
+    public boolean isFull() {
+        return full;
+    }
+
+    public int getRowsRead() {
+        return rowsRead;
+    }
+
+    public int getAdded() {
+        return added;
+    }
+
+    public int getRemoved() {
+        return removed;
+    }
+
+    public int getChanged() {
+        return added + removed;
+    }
+
+    // Time spent reading the database
+    public long getReadMillis() {
+        return readMillis;
+    }
+
+    // Time spent working out and applying the changes
+    public long getApplyMillis() {
+        return applyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return (full ? "Full" : "Delta") + " sync: read " + rowsRead + " rows in " + readMillis + "ms, added "
+                + added + ", removed " + removed + " in " + applyMillis + "ms";
+    }
+}
@@ -0,0 +1,60 @@
+package pw.twpi.whitelistsync2.models;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from a UUID, given as its two halves, to an int.
+ * Keys sit next to each other in one long array, so a lookup touches one or two cache lines and allocates nothing.
+ * Filled once when an index or its overlay is built, read-only afterwards.
+ */
+final class UuidTable {
+
+    private static final int EMPTY = -1;
+
+    // Slot i holds keys[2i], keys[2i + 1] and values[i]
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+
+    UuidTable(int expectedSize) {
+        // Keep the table at most 2/3 full so probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize + expectedSize / 2) * 2 - 1);
+        this.keys = new long[capacity * 2];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(values, EMPTY);
+    }
+
+    // Insert or replace. Value must not be negative.
+    void put(long most, long least, int value) {
+        int slot = hash(most, least) & mask;
+        while (values[slot] != EMPTY && (keys[slot * 2] != most || keys[slot * 2 + 1] != least)) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot * 2] = most;
+        keys[slot * 2 + 1] = least;
+        values[slot] = value;
+    }
+
+    // The value for the key, or -1 if it is not in the table.
+    int get(long most, long least) {
+        int slot = hash(most, least) & mask;
+        int value;
+        while ((value = values[slot]) != EMPTY) {
+            if (keys[slot * 2] == most && keys[slot * 2 + 1] == least) {
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    // Version 4 UUIDs are mostly random already, the mix also covers name-based and offline-mode ones.
+    private static int hash(long most, long least) {
+        long h = most * 0x9E3779B97F4A7C15L ^ least;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
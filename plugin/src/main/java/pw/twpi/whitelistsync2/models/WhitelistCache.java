@@ -0,0 +1,59 @@
+package pw.twpi.whitelistsync2.models;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Holds the current whitelist snapshot used by the login path.
+ * Reads are a single volatile load and never block. Writers are serialized and publish a new
+ * snapshot atomically, so readers never observe a half-applied change.
+ */
+public final class WhitelistCache {
+
+    private static volatile WhitelistIndex current = WhitelistIndex.EMPTY;
+
+    private WhitelistCache() {
+    }
+
+    public static WhitelistIndex current() {
+        return current;
+    }
+
+    // Replace the whole snapshot, used by full syncs.
+    public static synchronized void replace(Collection<WhitelistedPlayer> players) {
+        current = new WhitelistIndex(players);
+    }
+
+    // Record the UUID a name-only entry connected with. Returns false if the entry is gone or already bound.
+    public static synchronized boolean bindUuid(String name, UUID uuid) {
+        WhitelistIndex index = current;
+        WhitelistedPlayer player = index.getByName(WhitelistIndex.normalize(name));
+        if (player == null || player.isIDWhitelisted()) {
+            return false;
+        }
+
+        current = index.replace(player, new WhitelistedPlayer(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), player.getName(), true));
+        return true;
+    }
+
+    public static synchronized boolean rename(UUID uuid, String name) {
+        WhitelistIndex index = current;
+        WhitelistedPlayer player = index.getByUuid(uuid);
+        if (player == null) {
+            return false;
+        }
+
+        current = index.replace(player, new WhitelistedPlayer(player.getUuidMost(), player.getUuidLeast(), name, player.isIDWhitelisted()));
+        return true;
+    }
+
+    // Apply change log entries read by a delta sync.
+    public static synchronized void applyChanges(List<WhitelistChange> changes) {
+        current = current.applyChanges(changes);
+    }
+
+    public static synchronized void removeByName(String name) {
+        current = current.removeByName(name);
+    }
+}
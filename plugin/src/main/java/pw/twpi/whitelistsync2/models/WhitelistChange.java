@@ -0,0 +1,53 @@
+package pw.twpi.whitelistsync2.models;
+
+/**
+ * A single entry of the whitelist change log.
+ * Either the player row as it was written, or the removal of the player with this name.
+ */
+public class WhitelistChange {
+
+    private final long revision;
+    private final String uuid;
+    private final String name;
+    private final boolean isIDWhitelisted;
+    private final boolean removed;
+
+    public WhitelistChange(long revision, String uuid, String name, boolean isIDWhitelisted, boolean removed) {
+        this.revision = revision;
+        this.uuid = uuid;
+        this.name = name;
+        this.isIDWhitelisted = isIDWhitelisted;
+        this.removed = removed;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isIDWhitelisted() {
+        return isIDWhitelisted;
+    }
+
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    @Override
+    public String toString() {
+        return "WhitelistChange{" +
+                "revision=" + revision +
+                ", uuid='" + uuid + '\'' +
+                ", name='" + name + '\'' +
+                ", isIDWhitelisted=" + isIDWhitelisted +
+                ", removed=" + removed +
+                '}';
+    }
+}
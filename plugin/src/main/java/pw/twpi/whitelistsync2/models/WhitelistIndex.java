@@ -0,0 +1,329 @@
+package pw.twpi.whitelistsync2.models;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Immutable lookup index over the whitelisted players, keyed by UUID and by lowercase name.
+ * UUID lookups go through a {@link UuidTable} and do not allocate. A {@link BloomFilter} over both keys
+ * answers most lookups for players that are not whitelisted without touching either table.
+ * Changes produce a new index, so a reader holding one always sees a consistent view.
+ * Single entry changes, e.g. a UUID bound at login, go into an {@link OverlayTrie} on top of the base tables instead of
+ * rebuilding them. The tables are rebuilt once the overlay outgrows an eighth of them.
+ * Players held by an index must not be mutated.
+ */
+public final class WhitelistIndex {
+
+    public static final WhitelistIndex EMPTY = new WhitelistIndex(Collections.emptyList());
+
+    // Marks an overlay key whose base entry was removed
+    private static final WhitelistedPlayer REMOVED = new WhitelistedPlayer();
+
+    private static final int MIN_OVERLAY = 1024;
+
+    // Built in one go
+    private final List<WhitelistedPlayer> base;
+    private final UuidTable baseByUuid;
+    private final Map<String, WhitelistedPlayer> baseByName;
+    // Covers the base only, overlay keys are checked in the overlay itself
+    private final BloomFilter filter;
+
+    // Keys changed since the base was built. They hide the base's entries for the same keys.
+    private final OverlayTrie overlayByName;
+    private final OverlayTrie overlayByUuid;
+
+    private final int size;
+    // Base and overlay merged, built on first use
+    private volatile List<WhitelistedPlayer> players;
+
+    public WhitelistIndex(Collection<WhitelistedPlayer> players) {
+        this.base = Collections.unmodifiableList(new ArrayList<>(players));
+        this.baseByUuid = new UuidTable(base.size());
+        this.baseByName = new HashMap<>(base.size() * 2);
+        this.filter = new BloomFilter(base.size() * 2);
+
+        for (int i = 0; i < base.size(); i++) {
+            WhitelistedPlayer player = base.get(i);
+            if (player.getName() != null) {
+                String lowerName = normalize(player.getName());
+                baseByName.put(lowerName, player);
+                filter.addName(lowerName);
+            }
+
+            if (player.hasUuid()) {
+                baseByUuid.put(player.getUuidMost(), player.getUuidLeast(), i);
+                filter.addUuid(player.getUuidMost(), player.getUuidLeast());
+            }
+        }
+
+        this.overlayByName = OverlayTrie.EMPTY;
+        this.overlayByUuid = OverlayTrie.EMPTY;
+        this.size = base.size();
+        this.players = base;
+    }
+
+    private WhitelistIndex(WhitelistIndex from, OverlayTrie overlayByName, OverlayTrie overlayByUuid, int size) {
+        this.base = from.base;
+        this.baseByUuid = from.baseByUuid;
+        this.baseByName = from.baseByName;
+        this.filter = from.filter;
+        this.overlayByName = overlayByName;
+        this.overlayByUuid = overlayByUuid;
+        this.size = size;
+    }
+
+    /**
+     * False if no player has this UUID or this name. True means one of them may be in the index.
+     * Name must already be lowercase.
+     */
+    public boolean mightContain(long most, long least, String lowerName) {
+        if (filter.mightContainUuid(most, least) || filter.mightContainName(lowerName)) {
+            return true;
+        }
+        // The base cannot hold a key the filter rejected, only the overlay can
+        OverlayTrie.Entry entry = overlayByUuid.size() > 0 ? overlayByUuid.getUuid(most, least) : null;
+        if (entry != null && entry.player != REMOVED) {
+            return true;
+        }
+        entry = overlayByName.size() > 0 ? overlayByName.getName(lowerName) : null;
+        return entry != null && entry.player != REMOVED;
+    }
+
+    public WhitelistedPlayer getByUuid(UUID uuid) {
+        return getByUuid(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public WhitelistedPlayer getByUuid(long most, long least) {
+        if (overlayByUuid.size() > 0) {
+            OverlayTrie.Entry entry = overlayByUuid.getUuid(most, least);
+            if (entry != null) {
+                return entry.player == REMOVED ? null : entry.player;
+            }
+        }
+        int i = baseByUuid.get(most, least);
+        return i < 0 ? null : base.get(i);
+    }
+
+    // Name must already be lowercase.
+    public WhitelistedPlayer getByName(String lowerName) {
+        if (overlayByName.size() > 0) {
+            OverlayTrie.Entry entry = overlayByName.getName(lowerName);
+            if (entry != null) {
+                return entry.player == REMOVED ? null : entry.player;
+            }
+        }
+        return baseByName.get(lowerName);
+    }
+
+    public List<WhitelistedPlayer> getPlayers() {
+        List<WhitelistedPlayer> merged = players;
+        if (merged == null) {
+            merged = Collections.unmodifiableList(merge());
+            players = merged;
+        }
+        return merged;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Copy of this index with the old entry swapped for the new one. Other entries with the new name or UUID are removed.
+    public WhitelistIndex replace(WhitelistedPlayer oldPlayer, WhitelistedPlayer newPlayer) {
+        WhitelistIndex index = this;
+        WhitelistedPlayer sameName = newPlayer.getName() != null ? getByName(normalize(newPlayer.getName())) : null;
+        if (sameName != null && sameName != oldPlayer) {
+            index = index.update(sameName, null);
+        }
+        WhitelistedPlayer sameUuid = newPlayer.hasUuid() ? index.getByUuid(newPlayer.getUuidMost(), newPlayer.getUuidLeast()) : null;
+        if (sameUuid != null && sameUuid != oldPlayer) {
+            index = index.update(sameUuid, null);
+        }
+        return index.update(oldPlayer, newPlayer);
+    }
+
+    // Copy of this index without the player with the given name.
+    public WhitelistIndex removeByName(String name) {
+        WhitelistedPlayer removed = getByName(normalize(name));
+        if (removed == null) {
+            return this;
+        }
+        return update(removed, null);
+    }
+
+    // Copy of this index with the changes applied in order. Each change replaces any entry with the same name or UUID.
+    public WhitelistIndex applyChanges(List<WhitelistChange> changes) {
+        if (changes.isEmpty()) {
+            return this;
+        }
+
+        // A few changes, e.g. from a delta sync, go into the overlay one by one
+        if (overlaySize() + changes.size() * 4 < overlayLimit()) {
+            WhitelistIndex index = this;
+            for (WhitelistChange change : changes) {
+                index = index.applyChange(change);
+            }
+            return index;
+        }
+
+        List<WhitelistedPlayer> players = getPlayers();
+        Map<String, WhitelistedPlayer> names = new LinkedHashMap<>(players.size() * 2);
+        // Players without a name are carried through by UUID, like applyChange keeps them
+        Map<UUID, WhitelistedPlayer> nameless = new LinkedHashMap<>();
+        for (WhitelistedPlayer player : players) {
+            if (player.getName() != null) {
+                names.put(normalize(player.getName()), player);
+            } else if (player.hasUuid()) {
+                nameless.put(new UUID(player.getUuidMost(), player.getUuidLeast()), player);
+            }
+        }
+
+        // Names given to UUIDs by earlier changes in this batch, the index answers for everything else
+        Map<UUID, String> changedNames = new HashMap<>();
+        for (WhitelistChange change : changes) {
+            if (change.getName() == null) {
+                continue;
+            }
+
+            String lowerName = normalize(change.getName());
+            names.remove(lowerName);
+            if (change.isRemoved()) {
+                continue;
+            }
+
+            WhitelistedPlayer player = new WhitelistedPlayer(change.getUuid(), change.getName(), change.isIDWhitelisted());
+            if (player.hasUuid()) {
+                // The same player under an older name, e.g. after a rename
+                UUID uuid = new UUID(player.getUuidMost(), player.getUuidLeast());
+                nameless.remove(uuid);
+                String oldName = changedNames.put(uuid, lowerName);
+                if (oldName == null) {
+                    WhitelistedPlayer indexed = getByUuid(uuid);
+                    oldName = indexed != null && indexed.getName() != null ? normalize(indexed.getName()) : null;
+                }
+
+                if (oldName != null && !oldName.equals(lowerName)) {
+                    WhitelistedPlayer old = names.get(oldName);
+                    if (old != null && old.hasUuid(player.getUuidMost(), player.getUuidLeast())) {
+                        names.remove(oldName);
+                    }
+                }
+            }
+            names.put(lowerName, player);
+        }
+
+        List<WhitelistedPlayer> merged = new ArrayList<>(names.size() + nameless.size());
+        merged.addAll(names.values());
+        merged.addAll(nameless.values());
+        return new WhitelistIndex(merged);
+    }
+
+    // One change through the overlay, with the same outcome as in applyChanges.
+    private WhitelistIndex applyChange(WhitelistChange change) {
+        if (change.getName() == null) {
+            return this;
+        }
+
+        WhitelistedPlayer sameName = getByName(normalize(change.getName()));
+        if (change.isRemoved()) {
+            return sameName == null ? this : update(sameName, null);
+        }
+
+        WhitelistedPlayer player = new WhitelistedPlayer(change.getUuid(), change.getName(), change.isIDWhitelisted());
+        WhitelistedPlayer sameUuid = player.hasUuid() ? getByUuid(player.getUuidMost(), player.getUuidLeast()) : null;
+
+        WhitelistIndex index = this;
+        if (sameUuid != null && sameUuid != sameName) {
+            index = index.update(sameUuid, null);
+        }
+        return index.update(sameName, player);
+    }
+
+    /**
+     * Copy of this index with one entry removed and one added, either may be null.
+     * Costs a few small array copies, or a rebuild once the overlay is full.
+     */
+    private WhitelistIndex update(WhitelistedPlayer removed, WhitelistedPlayer added) {
+        if (overlaySize() + 4 > overlayLimit()) {
+            List<WhitelistedPlayer> merged = new ArrayList<>(getPlayers());
+            if (removed != null) {
+                merged.remove(removed);
+            }
+            if (added != null) {
+                merged.add(added);
+            }
+            return new WhitelistIndex(merged);
+        }
+
+        OverlayTrie names = overlayByName;
+        OverlayTrie uuids = overlayByUuid;
+        int newSize = size;
+
+        if (removed != null) {
+            newSize--;
+            if (removed.getName() != null) {
+                names = names.putName(normalize(removed.getName()), REMOVED);
+            }
+            if (removed.hasUuid()) {
+                uuids = uuids.putUuid(removed.getUuidMost(), removed.getUuidLeast(), REMOVED);
+            }
+        }
+
+        if (added != null) {
+            newSize++;
+            if (added.getName() != null) {
+                names = names.putName(normalize(added.getName()), added);
+            }
+            if (added.hasUuid()) {
+                uuids = uuids.putUuid(added.getUuidMost(), added.getUuidLeast(), added);
+            }
+        }
+
+        return new WhitelistIndex(this, names, uuids, newSize);
+    }
+
+    private int overlaySize() {
+        return overlayByName.size() + overlayByUuid.size();
+    }
+
+    private int overlayLimit() {
+        return Math.max(MIN_OVERLAY, base.size() / 8);
+    }
+
+    // Base entries not hidden by the overlay, then the overlay's own entries.
+    private List<WhitelistedPlayer> merge() {
+        List<WhitelistedPlayer> merged = new ArrayList<>(size);
+        for (WhitelistedPlayer player : base) {
+            boolean hidden = player.getName() != null
+                    ? overlayByName.getName(normalize(player.getName())) != null
+                    : player.hasUuid() && overlayByUuid.getUuid(player.getUuidMost(), player.getUuidLeast()) != null;
+            if (!hidden) {
+                merged.add(player);
+            }
+        }
+
+        overlayByName.forEach(entry -> {
+            if (entry.player != REMOVED) {
+                merged.add(entry.player);
+            }
+        });
+        // Players without a name are only in the UUID overlay
+        overlayByUuid.forEach(entry -> {
+            if (entry.player != REMOVED && entry.player.getName() == null) {
+                merged.add(entry.player);
+            }
+        });
+        return merged;
+    }
+
+    public static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
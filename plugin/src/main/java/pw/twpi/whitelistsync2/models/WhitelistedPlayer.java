@@ -0,0 +1,100 @@
+package pw.twpi.whitelistsync2.models;
+
+import java.util.UUID;
+
+/**
+ * DAO for a whitelisted user
+ * The UUID is kept as its two halves. The string form is only built for the database and whitelist.json.
+ * @author Richard Nader, Jr. <rmnader@svsu.edu>
+ */
+public class WhitelistedPlayer {
+
+    private long uuidMost;
+    private long uuidLeast;
+    private boolean hasUuid;
+    private String name;
+    private boolean isIDWhitelisted;
+
+    public WhitelistedPlayer() {
+    }
+
+    // A missing or malformed uuid leaves the player without one.
+    public WhitelistedPlayer(String uuid, String name, boolean isWhitelisted) {
+        setUuid(uuid);
+        this.name = name;
+        this.isIDWhitelisted = isWhitelisted;
+    }
+
+    public WhitelistedPlayer(long uuidMost, long uuidLeast, String name, boolean isWhitelisted) {
+        this.uuidMost = uuidMost;
+        this.uuidLeast = uuidLeast;
+        this.hasUuid = true;
+        this.name = name;
+        this.isIDWhitelisted = isWhitelisted;
+    }
+
+    public String getUuid() {
+        return hasUuid ? new UUID(uuidMost, uuidLeast).toString() : null;
+    }
+
+    // The two halves as a key, without building the string form
+    public UUID getUniqueId() {
+        return hasUuid ? new UUID(uuidMost, uuidLeast) : null;
+    }
+
+    public void setUuid(String uuid) {
+        hasUuid = false;
+        if (uuid == null) {
+            return;
+        }
+
+        try {
+            UUID parsed = UUID.fromString(uuid);
+            uuidMost = parsed.getMostSignificantBits();
+            uuidLeast = parsed.getLeastSignificantBits();
+            hasUuid = true;
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    public boolean hasUuid() {
+        return hasUuid;
+    }
+
+    public long getUuidMost() {
+        return uuidMost;
+    }
+
+    public long getUuidLeast() {
+        return uuidLeast;
+    }
+
+    public boolean hasUuid(long most, long least) {
+        return hasUuid && uuidMost == most && uuidLeast == least;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public boolean isIDWhitelisted() {
+        return isIDWhitelisted;
+    }
+
+    public void setIDWhitelisted(boolean IDWhitelisted) {
+        isIDWhitelisted = IDWhitelisted;
+    }
+
+    @Override
+    public String toString() {
+        return "WhitelistedPlayer{" +
+                "uuid='" + getUuid() + '\'' +
+                ", name='" + name + '\'' +
+                ", isWhitelisted=" + isIDWhitelisted +
+                '}';
+    }
+}
@@ -0,0 +1,45 @@
+package pw.twpi.whitelistsync2.notify;
+
+import pw.twpi.whitelistsync2.models.WhitelistChange;
+
+/**
+ * Channel used to tell the other servers about whitelist changes as soon as they are written.
+ * Notifications are best effort; the periodic sync still reconciles anything that was missed.
+ */
+public interface ChangeNotifier {
+
+    // Notifier used when notifications are disabled.
+    public static final ChangeNotifier NONE = new ChangeNotifier() {
+        @Override
+        public void start(Handler handler) {
+        }
+
+        @Override
+        public void publishChange(WhitelistChange change) {
+        }
+
+        @Override
+        public void publishResync() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    public void start(Handler handler);
+
+    // A single player was added, removed or updated.
+    public void publishChange(WhitelistChange change);
+
+    // Many rows changed at once, peers should sync from the database.
+    public void publishResync();
+
+    public void close();
+
+    public interface Handler {
+        public void onChange(WhitelistChange change);
+
+        public void onResync();
+    }
+}
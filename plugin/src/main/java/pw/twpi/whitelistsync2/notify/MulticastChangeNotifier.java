@@ -0,0 +1,235 @@
+package pw.twpi.whitelistsync2.notify;
+
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.models.WhitelistChange;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Sends whitelist changes to the other servers over UDP multicast.
+ * Every server joins the same group and port; packets sent by this server are ignored on receipt.
+ * Using the loopback interface lets several servers on one machine talk to each other.
+ *
+ * Packets are signed with an HMAC over the shared secret and dropped if the signature does not match.
+ * Without a secret anyone on the network could send one, so changes received are only used as a reason to sync.
+ */
+public class MulticastChangeNotifier implements ChangeNotifier {
+
+    private static final int MAGIC = 0x57534332; // "WSC2"
+    private static final byte VERSION = 2;
+    private static final byte TYPE_CHANGE = 0;
+    private static final byte TYPE_RESYNC = 1;
+    private static final int MAX_PACKET_SIZE = 512;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_LENGTH = 32;
+    // Older packets are dropped, so a captured one cannot be sent again later
+    private static final long MAX_AGE_MILLIS = 30000;
+
+    private final InetAddress group;
+    private final int port;
+    private final NetworkInterface networkInterface;
+    private final int ttl;
+    private final long nodeId = new Random().nextLong();
+    private final SecretKeySpec key;
+
+    private MulticastSocket socket;
+    private Thread receiver;
+
+    /**
+     * @param secret shared by every server of the network, empty to send unsigned packets
+     */
+    public MulticastChangeNotifier(InetAddress group, int port, NetworkInterface networkInterface, int ttl, String secret) {
+        this.group = group;
+        this.port = port;
+        this.networkInterface = networkInterface;
+        this.ttl = ttl;
+        this.key = secret == null || secret.isEmpty() ? null : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+    }
+
+    @Override
+    public void start(Handler handler) {
+        try {
+            socket = new MulticastSocket(port);
+            socket.setTimeToLive(ttl);
+            // false enables loopback, so servers on the same host receive each other's packets.
+            socket.setLoopbackMode(false);
+
+            if (networkInterface != null) {
+                socket.setNetworkInterface(networkInterface);
+                socket.joinGroup(new InetSocketAddress(group, port), networkInterface);
+            } else {
+                socket.joinGroup(group);
+            }
+        } catch (IOException e) {
+            WhitelistSync2.LOGGER.severe("Failed to join notification group " + group.getHostAddress() + ":" + port + "! Falling back to polling only.");
+            e.printStackTrace();
+            close();
+            return;
+        }
+
+        receiver = new Thread(() -> receive(handler), "WhitelistSync2-notifications");
+        receiver.setDaemon(true);
+        receiver.start();
+
+        WhitelistSync2.LOGGER.info("Listening for whitelist changes on " + group.getHostAddress() + ":" + port + ".");
+        if (key == null) {
+            WhitelistSync2.LOGGER.warning("No notification secret is set, received changes only trigger a sync.");
+        }
+    }
+
+    @Override
+    public void publishChange(WhitelistChange change) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = writeHeader(bytes, TYPE_CHANGE);
+
+            int flags = (change.isIDWhitelisted() ? 1 : 0) | (change.isRemoved() ? 2 : 0);
+            out.writeByte(flags);
+            out.writeUTF(change.getUuid() == null ? "" : change.getUuid());
+            out.writeUTF(change.getName() == null ? "" : change.getName());
+
+            send(bytes.toByteArray());
+        } catch (IOException e) {
+            WhitelistSync2.LOGGER.warning("Failed to send whitelist change notification: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void publishResync() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+            writeHeader(bytes, TYPE_RESYNC);
+
+            send(bytes.toByteArray());
+        } catch (IOException e) {
+            WhitelistSync2.LOGGER.warning("Failed to send whitelist resync notification: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (socket != null) {
+            // Closing the socket also ends the receiver thread.
+            socket.close();
+        }
+    }
+
+    private DataOutputStream writeHeader(ByteArrayOutputStream bytes, byte type) throws IOException {
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(nodeId);
+        out.writeLong(System.currentTimeMillis());
+        out.writeByte(type);
+        return out;
+    }
+
+    private void send(byte[] data) throws IOException {
+        if (socket == null || socket.isClosed()) {
+            return;
+        }
+
+        if (key != null) {
+            byte[] signed = Arrays.copyOf(data, data.length + MAC_LENGTH);
+            System.arraycopy(sign(data, 0, data.length), 0, signed, data.length, MAC_LENGTH);
+            data = signed;
+        }
+        socket.send(new DatagramPacket(data, data.length, group, port));
+    }
+
+    private byte[] sign(byte[] data, int offset, int length) throws IOException {
+        try {
+            // Mac instances are not thread safe, and packets are sent from several threads
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            mac.update(data, offset, length);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to sign whitelist notification", e);
+        }
+    }
+
+    // Whether the packet ends with a valid signature, always true without a secret.
+    private boolean verify(DatagramPacket packet) throws IOException {
+        if (key == null) {
+            return true;
+        }
+
+        int length = packet.getLength() - MAC_LENGTH;
+        if (length <= 0) {
+            return false;
+        }
+        byte[] expected = sign(packet.getData(), packet.getOffset(), length);
+        byte[] actual = Arrays.copyOfRange(packet.getData(), packet.getOffset() + length, packet.getOffset() + packet.getLength());
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private void receive(Handler handler) {
+        byte[] buffer = new byte[MAX_PACKET_SIZE];
+
+        while (!socket.isClosed()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+            } catch (SocketException e) {
+                // Socket closed on shutdown.
+                break;
+            } catch (IOException e) {
+                WhitelistSync2.LOGGER.warning("Error receiving whitelist notification: " + e.getMessage());
+                continue;
+            }
+
+            try {
+                if (!verify(packet)) {
+                    WhitelistSync2.LOGGER.warning("Ignoring whitelist notification with a bad signature from " + packet.getAddress());
+                    continue;
+                }
+
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()));
+                if (in.readInt() != MAGIC || in.readByte() != VERSION || in.readLong() == nodeId) {
+                    continue;
+                }
+                long sentAt = in.readLong();
+                if (key != null && Math.abs(System.currentTimeMillis() - sentAt) > MAX_AGE_MILLIS) {
+                    WhitelistSync2.LOGGER.warning("Ignoring expired whitelist notification from " + packet.getAddress());
+                    continue;
+                }
+
+                byte type = in.readByte();
+                if (type == TYPE_CHANGE && key != null) {
+                    int flags = in.readByte();
+                    String uuid = in.readUTF();
+                    String name = in.readUTF();
+
+                    handler.onChange(new WhitelistChange(-1, uuid.isEmpty() ? null : uuid, name.isEmpty() ? null : name,
+                            (flags & 1) != 0, (flags & 2) != 0));
+                } else if (type == TYPE_CHANGE || type == TYPE_RESYNC) {
+                    // Unsigned changes are only a reason to read the database
+                    handler.onResync();
+                }
+            } catch (IOException e) {
+                WhitelistSync2.LOGGER.warning("Ignoring malformed whitelist notification from " + packet.getAddress());
+            } catch (RuntimeException e) {
+                WhitelistSync2.LOGGER.severe("Error applying whitelist notification.");
+                e.printStackTrace();
+            }
+        }
+    }
+}
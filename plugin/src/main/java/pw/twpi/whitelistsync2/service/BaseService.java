@@ -0,0 +1,128 @@
+package pw.twpi.whitelistsync2.service;
+
+import pw.twpi.whitelistsync2.models.OppedPlayer;
+import pw.twpi.whitelistsync2.models.PendingPlayerUpdate;
+import pw.twpi.whitelistsync2.models.SyncResult;
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * A storage backend for the whitelist. Implementations are found with {@link java.util.ServiceLoader},
+ * listed in META-INF/services/pw.twpi.whitelistsync2.service.BaseService, and picked by general.sync-mode.
+ * Constructors must not open connections, that happens in {@link #initializeDatabase()}.
+ */
+public interface BaseService {
+
+    // Value of general.sync-mode that selects this backend, case insensitive
+    public String getSyncMode();
+
+    // Config section holding the backend's settings, including sync-time
+    public default String getConfigSection() {
+        return getSyncMode().toLowerCase(Locale.ROOT);
+    }
+
+    // Whether a sync only reads what changed since the last one, so extra syncs are cheap
+    public default boolean supportsDelta() {
+        return false;
+    }
+
+    // Whether many players can be written in one call, used for the bulk push and queued login updates
+    public default boolean supportsBatch() {
+        return false;
+    }
+
+    // Whether changes are published through the change notifier
+    public default boolean supportsNotifications() {
+        return false;
+    }
+
+    public boolean initializeDatabase();
+
+    // Close connections and release resources held by the service
+    public void shutdown();
+
+    public ConnectionPool getConnectionPool();
+
+    // Whether the backend answers, to tell a write it rejected from one that never got there. Backends without a pool always do.
+    public default boolean isReachable() {
+        ConnectionPool pool = getConnectionPool();
+        return pool == null || pool.isReachable();
+    }
+
+
+    // Getter functions
+    public ArrayList<WhitelistedPlayer> getWhitelistedPlayersFromDatabase();
+
+    public ArrayList<WhitelistedPlayer> getWhitelistedPlayersFromLocal();
+
+
+    // Syncing functions
+    // Progress messages are passed to progressOutput as batches are committed
+    public boolean copyLocalWhitelistedPlayersToDatabase(Consumer<String> progressOutput);
+
+    public boolean copyDatabaseWhitelistedPlayersToLocal(Server server);
+
+    // What the last copyDatabaseWhitelistedPlayersToLocal changed, null before the first sync
+    public SyncResult getLastSyncResult();
+
+
+    // Addition functions
+    public default boolean addWhitelistPlayer(OfflinePlayer player) {
+        return addWhitelistPlayer(player.getUniqueId(), player.getName());
+    }
+
+    // For changes without an OfflinePlayer, e.g. replayed from the journal
+    public boolean addWhitelistPlayer(UUID uuid, String name);
+    public boolean updateWhitelistPlayerToID(String name, String uuid);
+    public boolean updateWhitelistPlayerName(String name, String uuid);
+
+    // Write queued login updates in one transaction
+    public boolean flushPlayerUpdates(List<PendingPlayerUpdate> updates);
+
+
+    // Removal functions
+    public default boolean removeWhitelistPlayer(OfflinePlayer player) {
+        return removeWhitelistPlayer(player.getUniqueId(), player.getName());
+    }
+
+    public boolean removeWhitelistPlayer(UUID uuid, String name);
+
+
+    // Op list functions, only used when general.sync-ops is on.
+    // Whether ops are synced, i.e. the backend supports it and the op tables were set up
+    public default boolean supportsOps() {
+        return false;
+    }
+
+    public default ArrayList<OppedPlayer> getOppedPlayersFromDatabase() {
+        return new ArrayList<>();
+    }
+
+    public default boolean copyLocalOppedPlayersToDatabase(Consumer<String> progressOutput) {
+        return false;
+    }
+
+    public default boolean copyDatabaseOppedPlayersToLocal(Server server) {
+        return false;
+    }
+
+    // What the last copyDatabaseOppedPlayersToLocal changed, null before the first sync
+    public default SyncResult getLastOpSyncResult() {
+        return null;
+    }
+
+    public default boolean addOppedPlayer(OfflinePlayer player) {
+        return false;
+    }
+
+    public default boolean removeOppedPlayer(OfflinePlayer player) {
+        return false;
+    }
+}
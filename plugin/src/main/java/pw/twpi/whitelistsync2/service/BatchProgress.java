@@ -0,0 +1,42 @@
+package pw.twpi.whitelistsync2.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Reports progress of a bulk database write back to whoever started it.
+ */
+public class BatchProgress {
+
+    // Minimum time between two progress messages.
+    private static final long REPORT_INTERVAL_MILLIS = 2000;
+
+    private final Consumer<String> output;
+    // 0 when the number of players is not known up front
+    private final int total;
+    private final long startTime = System.currentTimeMillis();
+    private long lastReport = startTime;
+
+    public BatchProgress(Consumer<String> output, int total) {
+        this.output = output;
+        this.total = total;
+    }
+
+    // Called after each committed batch.
+    public void update(int written) {
+        long now = System.currentTimeMillis();
+        if (now - lastReport >= REPORT_INTERVAL_MILLIS) {
+            lastReport = now;
+            output.accept("Pushed " + written + (total > 0 ? "/" + total : "") + " players (" + rowsPerSecond(written, now) + " rows/s)...");
+        }
+    }
+
+    public void finish(int written) {
+        long now = System.currentTimeMillis();
+        output.accept("Pushed " + written + " players in " + (now - startTime) + "ms (" + rowsPerSecond(written, now) + " rows/s).");
+    }
+
+    private long rowsPerSecond(int written, long now) {
+        long elapsed = Math.max(1, now - startTime);
+        return written * 1000L / elapsed;
+    }
+}
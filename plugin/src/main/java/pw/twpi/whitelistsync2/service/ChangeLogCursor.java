@@ -0,0 +1,70 @@
+package pw.twpi.whitelistsync2.service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tracks how far a node has read the whitelist change log.
+ *
+ * Revisions come from an auto increment column, so a transaction that started earlier can commit
+ * a lower revision after a higher one has already been read. Skipped revisions are remembered and
+ * looked for again on the next few polls before they are given up as rolled back.
+ */
+public class ChangeLogCursor {
+
+    // Number of polls a skipped revision is looked for before it is treated as rolled back.
+    private static final int GAP_POLLS = 5;
+
+    // Cap on remembered gaps, e.g. after a large rolled back bulk push.
+    private static final int MAX_GAPS = 1000;
+
+    private long lastRevision = -1;
+    private final TreeMap<Long, Integer> gaps = new TreeMap<>();
+
+    // True until the first full read has set a starting revision.
+    public synchronized boolean needsFullSync() {
+        return lastRevision < 0;
+    }
+
+    // Start from a full read. Everything up to and including the revision is already applied.
+    public synchronized void reset(long revision) {
+        lastRevision = revision;
+        gaps.clear();
+    }
+
+    // Revisions strictly greater than this one must be queried.
+    public synchronized long queryFrom() {
+        return gaps.isEmpty() ? lastRevision : Math.min(lastRevision, gaps.firstKey() - 1);
+    }
+
+    // Returns whether the row read by the query still needs to be applied.
+    public synchronized boolean accept(long revision) {
+        if (revision <= lastRevision) {
+            return gaps.remove(revision) != null;
+        }
+
+        for (long missing = lastRevision + 1; missing < revision && gaps.size() < MAX_GAPS; missing++) {
+            gaps.put(missing, GAP_POLLS);
+        }
+        lastRevision = revision;
+        return true;
+    }
+
+    // Called once a poll has been fully read.
+    public synchronized void endPoll() {
+        Iterator<Map.Entry<Long, Integer>> iterator = gaps.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Integer> gap = iterator.next();
+            if (gap.getValue() <= 1) {
+                iterator.remove();
+            } else {
+                gap.setValue(gap.getValue() - 1);
+            }
+        }
+    }
+
+    public synchronized long getLastRevision() {
+        return lastRevision;
+    }
+}
@@ -0,0 +1,449 @@
+package pw.twpi.whitelistsync2.service;
+
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.metrics.Histogram;
+import pw.twpi.whitelistsync2.metrics.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small bounded JDBC connection pool shared by the database services.
+ * Connections handed out are proxies; closing one returns it to the pool instead of closing the socket.
+ * Each connection keeps a cache of its prepared statements, so prepareStatement(sql) is only sent
+ * to the database the first time a connection sees that statement text.
+ * Settings are read from the "pool" section of the config.
+ */
+public class ConnectionPool {
+
+    // Connections used more recently than this are not re-validated on borrow.
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+
+    private final String url;
+    private final Properties properties;
+    private final String name;
+
+    private final int maxSize;
+    private final int minIdle;
+    private final long idleTimeoutMillis;
+    private final long connectionTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    private final LinkedBlockingDeque<PhysicalConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed = false;
+
+    // Metrics
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+    private final Histogram waitTime;
+
+    public ConnectionPool(String name, String url, Properties properties) {
+        this.name = name;
+        this.url = url;
+        this.properties = properties;
+
+        this.maxSize = Math.max(1, WhitelistSync2.CONFIG.getInt("pool.max-size", 4));
+        this.minIdle = Math.min(maxSize, Math.max(0, WhitelistSync2.CONFIG.getInt("pool.min-idle", 1)));
+        this.idleTimeoutMillis = WhitelistSync2.CONFIG.getLong("pool.idle-timeout", 600) * 1000;
+        this.connectionTimeoutMillis = WhitelistSync2.CONFIG.getLong("pool.connection-timeout", 10) * 1000;
+        this.validationTimeoutSeconds = Math.max(1, WhitelistSync2.CONFIG.getInt("pool.validation-timeout", 5));
+        this.statementCacheSize = Math.max(0, WhitelistSync2.CONFIG.getInt("pool.statement-cache-size", 32));
+
+        this.permits = new Semaphore(maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "WhitelistSync2-" + name + "-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.waitTime = Metrics.histogram("pool_wait_seconds", "Time spent waiting for a database connection.", "pool", name);
+        Metrics.gauge("pool_connections", "Database connections by state.", active::get, "pool", name, "state", "active");
+        Metrics.gauge("pool_connections", "Database connections by state.", idle::size, "pool", name, "state", "idle");
+        Metrics.gauge("pool_connections", "Database connections by state.", permits::getQueueLength, "pool", name, "state", "waiting");
+
+        long period = Math.max(1000, Math.min(idleTimeoutMillis, 30000));
+        housekeeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Borrow a connection. Close it when done to hand it back.
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException(name + " connection pool is closed");
+        }
+
+        long waitStart = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(connectionTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLTransientConnectionException(name + " connection pool exhausted, timed out after "
+                        + connectionTimeoutMillis + "ms (" + maxSize + " connections in use)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a " + name + " connection", e);
+        }
+
+        try {
+            PhysicalConnection connection = takeValidIdle();
+            if (connection == null) {
+                connection = new PhysicalConnection(DriverManager.getConnection(url, properties));
+            }
+
+            recordWait(System.nanoTime() - waitStart);
+            active.incrementAndGet();
+            return wrap(connection);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // Close all idle connections and refuse new borrows. Borrowed connections are closed when returned.
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+
+        PhysicalConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            connection.close();
+        }
+    }
+
+    // Whether the database answers right now, e.g. to tell a rejected write from an unreachable database.
+    public boolean isReachable() {
+        try (Connection conn = getConnection()) {
+            return conn.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    public int getActiveConnections() {
+        return active.get();
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getThreadsAwaitingConnection() {
+        return permits.getQueueLength();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long borrows = borrowCount.get();
+        return borrows == 0 ? 0 : totalWaitNanos.get() / (double) borrows / 1_000_000.0;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.get();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s pool: %d active, %d idle, %d/%d max, %d waiting | wait avg %.2fms, max %.2fms | %d borrows, %d timeouts | statement cache %d hits, %d misses",
+                name, getActiveConnections(), getIdleConnections(), getActiveConnections() + getIdleConnections(), maxSize,
+                getThreadsAwaitingConnection(), getAverageWaitMillis(), getMaxWaitMillis(), getBorrowCount(), getTimeoutCount(),
+                getStatementCacheHits(), getStatementCacheMisses());
+    }
+
+    private PhysicalConnection takeValidIdle() {
+        PhysicalConnection candidate;
+        while ((candidate = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - candidate.idleSince < VALIDATION_BYPASS_MILLIS) {
+                return candidate;
+            }
+
+            try {
+                if (candidate.connection.isValid(validationTimeoutSeconds)) {
+                    return candidate;
+                }
+            } catch (SQLException ignored) {
+            }
+
+            WhitelistSync2.LOGGER.warning("Discarding broken " + name + " connection.");
+            candidate.close();
+        }
+
+        return null;
+    }
+
+    private void release(PhysicalConnection connection, boolean broken) {
+        active.decrementAndGet();
+
+        try {
+            if (broken || closed || connection.connection.isClosed()) {
+                connection.close();
+                return;
+            }
+
+            // Never hand a half-finished transaction to the next borrower.
+            if (!connection.connection.getAutoCommit()) {
+                connection.connection.rollback();
+                connection.connection.setAutoCommit(true);
+            }
+            connection.releaseStatements();
+            connection.idleSince = System.currentTimeMillis();
+            idle.offerFirst(connection);
+        } catch (SQLException e) {
+            connection.close();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void evictIdle() {
+        try {
+            long now = System.currentTimeMillis();
+            Iterator<PhysicalConnection> iterator = idle.descendingIterator();
+            while (iterator.hasNext() && idle.size() > minIdle) {
+                PhysicalConnection candidate = iterator.next();
+                if (now - candidate.idleSince > idleTimeoutMillis && idle.remove(candidate)) {
+                    candidate.close();
+                }
+            }
+
+            // Top up to the minimum so the next borrow does not pay for a handshake.
+            while (!closed && idle.size() < minIdle && permits.tryAcquire()) {
+                try {
+                    idle.offerLast(new PhysicalConnection(DriverManager.getConnection(url, properties)));
+                } finally {
+                    permits.release();
+                }
+            }
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.warning("Failed to open idle " + name + " connection: " + e.getMessage());
+        } catch (RuntimeException e) {
+            WhitelistSync2.LOGGER.severe("Error in " + name + " connection pool housekeeping.");
+            e.printStackTrace();
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        borrowCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        waitTime.record(waitNanos);
+    }
+
+    private Connection wrap(PhysicalConnection connection) {
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new PooledConnectionHandler(connection));
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception ignored) {
+        }
+    }
+
+    /**
+     * A real database connection together with its prepared statement cache.
+     * The cache is kept across borrows, so the statement text is only parsed once per connection.
+     */
+    private class PhysicalConnection {
+        private final Connection connection;
+        private final LinkedHashMap<String, CachedStatement> statements;
+        private long idleSince = System.currentTimeMillis();
+
+        private PhysicalConnection(Connection connection) {
+            this.connection = connection;
+            this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                    if (size() > statementCacheSize) {
+                        closeQuietly(eldest.getValue().statement);
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        private PreparedStatement prepare(String sql) throws SQLException {
+            CachedStatement cached = statements.get(sql);
+            if (cached != null && !cached.inUse) {
+                statementCacheHits.incrementAndGet();
+            } else if (cached == null && statementCacheSize > 0) {
+                statementCacheMisses.incrementAndGet();
+                cached = new CachedStatement(connection.prepareStatement(sql));
+                statements.put(sql, cached);
+            } else {
+                // Same statement already open on this borrow, or caching disabled
+                statementCacheMisses.incrementAndGet();
+                return connection.prepareStatement(sql);
+            }
+
+            cached.inUse = true;
+            return cached.wrap();
+        }
+
+        // Statements left open by the last borrower are handed out again.
+        private void releaseStatements() throws SQLException {
+            for (CachedStatement cached : statements.values()) {
+                if (cached.inUse) {
+                    cached.reset();
+                }
+            }
+        }
+
+        private void close() {
+            for (CachedStatement cached : statements.values()) {
+                closeQuietly(cached.statement);
+            }
+            statements.clear();
+            closeQuietly(connection);
+        }
+    }
+
+    private static class CachedStatement {
+        private final PreparedStatement statement;
+        private boolean inUse = false;
+
+        private CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        // Closes a result set left open, like closing the statement would
+        private void reset() throws SQLException {
+            inUse = false;
+            ResultSet resultSet = statement.getResultSet();
+            if (resultSet != null) {
+                resultSet.close();
+            }
+            statement.clearParameters();
+            statement.clearBatch();
+        }
+
+        // Proxy whose close() puts the statement back into the cache instead of closing it.
+        private PreparedStatement wrap() {
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "close":
+                                if (inUse) {
+                                    reset();
+                                }
+                                return null;
+                            case "isClosed":
+                                return !inUse || statement.isClosed();
+                            default:
+                                break;
+                        }
+
+                        try {
+                            return method.invoke(statement, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+
+    private class PooledConnectionHandler implements InvocationHandler {
+        private final PhysicalConnection connection;
+        private boolean returned = false;
+        private boolean broken = false;
+
+        private PooledConnectionHandler(PhysicalConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(connection, broken);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || connection.connection.isClosed();
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(connection.connection)) {
+                        return connection.connection;
+                    }
+                    break;
+                default:
+                    break;
+            }
+
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+
+            try {
+                if (method.getName().equals("prepareStatement") && args.length == 1) {
+                    return connection.prepare((String) args[0]);
+                }
+                return method.invoke(connection.connection, args);
+            } catch (InvocationTargetException e) {
+                throw markBroken(e.getCause());
+            } catch (SQLException e) {
+                throw markBroken(e);
+            }
+        }
+
+        // Connection-level SQL states (08xxx) mean the socket is gone.
+        private Throwable markBroken(Throwable cause) {
+            if (cause instanceof SQLException && ((SQLException) cause).getSQLState() != null
+                    && ((SQLException) cause).getSQLState().startsWith("08")) {
+                broken = true;
+            }
+            return cause;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package pw.twpi.whitelistsync2.service;
+
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.models.OppedPlayer;
+import pw.twpi.whitelistsync2.models.PendingPlayerUpdate;
+import pw.twpi.whitelistsync2.models.SyncResult;
+import pw.twpi.whitelistsync2.models.WhitelistCache;
+import pw.twpi.whitelistsync2.models.WhitelistChange;
+import pw.twpi.whitelistsync2.models.WhitelistIndex;
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Wraps a backend so whitelist changes made on this server are logged to a {@link WhitelistJournal} first.
+ * Adds and removals that fail while the database is unreachable are applied locally and written to the database
+ * after the next successful sync. Writes the database rejects fail as usual. A snapshot of the whitelist is written after every sync that changed it, so the next start can
+ * answer logins before the database does. journal.snapshot-interval puts a floor on the time between two snapshots.
+ */
+public class JournaledService implements BaseService {
+
+    private final BaseService service;
+    private final WhitelistJournal journal;
+    private final long snapshotInterval;
+
+    private long lastSnapshotTime = 0;
+    private WhitelistIndex lastSnapshot = null;
+
+    public JournaledService(BaseService service, WhitelistJournal journal) {
+        this.service = service;
+        this.journal = journal;
+        this.snapshotInterval = Math.max(0, WhitelistSync2.CONFIG.getLong("journal.snapshot-interval", 0)) * 1000;
+    }
+
+    @Override
+    public String getSyncMode() {
+        return service.getSyncMode();
+    }
+
+    @Override
+    public String getConfigSection() {
+        return service.getConfigSection();
+    }
+
+    @Override
+    public boolean supportsDelta() {
+        return service.supportsDelta();
+    }
+
+    @Override
+    public boolean supportsBatch() {
+        return service.supportsBatch();
+    }
+
+    @Override
+    public boolean supportsNotifications() {
+        return service.supportsNotifications();
+    }
+
+    @Override
+    public boolean initializeDatabase() {
+        return service.initializeDatabase();
+    }
+
+    // Snapshot what the last sync saw, then close the backend.
+    @Override
+    public void shutdown() {
+        try {
+            journal.snapshot(WhitelistCache.current().getPlayers()).get();
+        } catch (Exception e) {
+            WhitelistSync2.LOGGER.warning("Failed to write the whitelist snapshot on shutdown, the next start uses the older one.");
+        }
+        journal.close();
+        service.shutdown();
+    }
+
+    @Override
+    public ConnectionPool getConnectionPool() {
+        return service.getConnectionPool();
+    }
+
+    @Override
+    public boolean isReachable() {
+        return service.isReachable();
+    }
+
+    @Override
+    public ArrayList<WhitelistedPlayer> getWhitelistedPlayersFromDatabase() {
+        return service.getWhitelistedPlayersFromDatabase();
+    }
+
+    @Override
+    public ArrayList<WhitelistedPlayer> getWhitelistedPlayersFromLocal() {
+        return service.getWhitelistedPlayersFromLocal();
+    }
+
+    @Override
+    public boolean copyLocalWhitelistedPlayersToDatabase(Consumer<String> progressOutput) {
+        return service.copyLocalWhitelistedPlayersToDatabase(progressOutput);
+    }
+
+    @Override
+    public boolean copyDatabaseWhitelistedPlayersToLocal(Server server) {
+        // Changes made while the database was away go first, so the sync below already reads them back.
+        replayUnconfirmed();
+
+        if (!service.copyDatabaseWhitelistedPlayersToLocal(server)) {
+            return false;
+        }
+
+        WhitelistIndex index = WhitelistCache.current();
+        long now = System.currentTimeMillis();
+        if (index != lastSnapshot && now - lastSnapshotTime >= snapshotInterval) {
+            lastSnapshot = index;
+            lastSnapshotTime = now;
+            journal.snapshot(index.getPlayers());
+        }
+
+        return true;
+    }
+
+    @Override
+    public SyncResult getLastSyncResult() {
+        return service.getLastSyncResult();
+    }
+
+    @Override
+    public boolean addWhitelistPlayer(UUID uuid, String name) {
+        WhitelistChange change = new WhitelistChange(0, uuid.toString(), name, false, false);
+        return writeThrough(change, () -> service.addWhitelistPlayer(uuid, name));
+    }
+
+    @Override
+    public boolean removeWhitelistPlayer(UUID uuid, String name) {
+        WhitelistChange change = new WhitelistChange(0, uuid.toString(), name, false, true);
+        return writeThrough(change, () -> service.removeWhitelistPlayer(uuid, name));
+    }
+
+    @Override
+    public boolean updateWhitelistPlayerToID(String name, String uuid) {
+        journal.append(new WhitelistChange(0, uuid, name, true, false));
+        return service.updateWhitelistPlayerToID(name, uuid);
+    }
+
+    @Override
+    public boolean updateWhitelistPlayerName(String name, String uuid) {
+        journal.append(new WhitelistChange(0, uuid, name, true, false));
+        return service.updateWhitelistPlayerName(name, uuid);
+    }
+
+    // Logged for the next start only. The write-behind queue retries updates the database does not take.
+    @Override
+    public boolean flushPlayerUpdates(List<PendingPlayerUpdate> updates) {
+        for (PendingPlayerUpdate update : updates) {
+            if (update.getBindName() != null) {
+                journal.append(new WhitelistChange(0, update.getUuid(), update.getBindName(), true, false));
+            }
+            if (update.getNewName() != null) {
+                journal.append(new WhitelistChange(0, update.getUuid(), update.getNewName(), true, false));
+            }
+        }
+        return service.flushPlayerUpdates(updates);
+    }
+
+    // Ops are not journaled and go straight to the backend.
+    @Override
+    public boolean supportsOps() {
+        return service.supportsOps();
+    }
+
+    @Override
+    public ArrayList<OppedPlayer> getOppedPlayersFromDatabase() {
+        return service.getOppedPlayersFromDatabase();
+    }
+
+    @Override
+    public boolean copyLocalOppedPlayersToDatabase(Consumer<String> progressOutput) {
+        return service.copyLocalOppedPlayersToDatabase(progressOutput);
+    }
+
+    @Override
+    public boolean copyDatabaseOppedPlayersToLocal(Server server) {
+        return service.copyDatabaseOppedPlayersToLocal(server);
+    }
+
+    @Override
+    public SyncResult getLastOpSyncResult() {
+        return service.getLastOpSyncResult();
+    }
+
+    @Override
+    public boolean addOppedPlayer(OfflinePlayer player) {
+        return service.addOppedPlayer(player);
+    }
+
+    @Override
+    public boolean removeOppedPlayer(OfflinePlayer player) {
+        return service.removeOppedPlayer(player);
+    }
+
+    // Log the change, then write it to the database. If the database is unreachable, keep it locally for replay.
+    private boolean writeThrough(WhitelistChange change, BooleanSupplier write) {
+        long sequence;
+        try {
+            sequence = journal.appendAndWait(change);
+        } catch (IOException e) {
+            WhitelistSync2.LOGGER.severe("Failed to write the whitelist journal, changes are not kept while the database is unreachable!");
+            e.printStackTrace();
+            return write.getAsBoolean();
+        }
+
+        if (write.getAsBoolean()) {
+            journal.confirm(sequence);
+            return true;
+        }
+
+        // The database answered and rejected the change, replaying it would fail the same way
+        if (isReachable()) {
+            journal.confirm(sequence);
+            return false;
+        }
+
+        WhitelistCache.applyChanges(Collections.singletonList(change));
+        WhitelistSync2.LOGGER.warning("Database unreachable, " + (change.isRemoved() ? "removed " : "added ") + change.getName()
+                + " locally. The change is written to the database once it is reachable again.");
+        return true;
+    }
+
+    /**
+     * Write changes the database missed, oldest first. Stops while the database is unreachable to keep them in order.
+     * Changes the database rejects are logged and dropped, so one bad change cannot hold up the rest.
+     */
+    private void replayUnconfirmed() {
+        Map<Long, WhitelistChange> unconfirmed = journal.getUnconfirmed();
+        if (unconfirmed.isEmpty()) {
+            return;
+        }
+
+        int replayed = 0;
+        for (Map.Entry<Long, WhitelistChange> entry : unconfirmed.entrySet()) {
+            WhitelistChange change = entry.getValue();
+            UUID uuid = parseUuid(change.getUuid());
+            boolean written = uuid != null && (change.isRemoved()
+                    ? service.removeWhitelistPlayer(uuid, change.getName())
+                    : service.addWhitelistPlayer(uuid, change.getName()));
+            if (!written) {
+                if (uuid != null && !isReachable()) {
+                    break;
+                }
+                WhitelistSync2.LOGGER.severe("Dropping journaled whitelist change the database did not take: " + change);
+            }
+
+            journal.confirm(entry.getKey());
+            if (written) {
+                replayed++;
+            }
+        }
+
+        if (replayed > 0) {
+            WhitelistSync2.LOGGER.info("Wrote " + replayed + " of " + unconfirmed.size() + " whitelist changes made while the database was unreachable.");
+        }
+    }
+
+    // Null if the journaled UUID is malformed, such a change can never be written.
+    private static UUID parseUuid(String uuid) {
+        try {
+            return UUID.fromString(uuid);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return null;
+        }
+    }
+}
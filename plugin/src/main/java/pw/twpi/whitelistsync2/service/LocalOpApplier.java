@@ -0,0 +1,109 @@
+package pw.twpi.whitelistsync2.service;
+
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import org.bukkit.Bukkit;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * Applies op changes found by a sync to the server on the main thread.
+ * Op lists are small, so everything queued by a sync is applied by a single task on the next tick.
+ * Changes are queued per UUID, so a player changed twice before that task runs is only written once.
+ * The task is handed to the main thread executor, which runs it on the next server tick.
+ */
+public class LocalOpApplier {
+
+    private final Executor mainThread;
+
+    // UUID to whether the player should be opped, in the order they were queued
+    private final LinkedHashMap<String, Boolean> pending = new LinkedHashMap<>();
+    private boolean scheduled = false;
+
+    // Metrics
+    private long batches = 0;
+    private long applied = 0;
+    private int lastBatchApplied = 0;
+    private long maxBatchNanos = 0;
+
+    public LocalOpApplier(Executor mainThread) {
+        this.mainThread = mainThread;
+    }
+
+    public void op(String uuid) {
+        submit(uuid, true);
+    }
+
+    public void deop(String uuid) {
+        submit(uuid, false);
+    }
+
+    public void submit(String uuid, boolean op) {
+        synchronized (pending) {
+            pending.remove(uuid);
+            pending.put(uuid, op);
+
+            if (!scheduled) {
+                scheduled = true;
+                mainThread.execute(this::applyPending);
+            }
+        }
+    }
+
+    public int getPending() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    public String describeTimings() {
+        synchronized (pending) {
+            return String.format("Op changes applied on the main thread: %d in %d batches, %d pending, "
+                            + "last batch %d changes, max %.3fms per batch",
+                    applied, batches, pending.size(), lastBatchApplied, maxBatchNanos / 1_000_000.0);
+        }
+    }
+
+    // Apply everything still queued. Must be called on the main thread.
+    public void shutdown() {
+        applyPending();
+    }
+
+    private void applyPending() {
+        Map<String, Boolean> batch;
+        synchronized (pending) {
+            scheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new LinkedHashMap<>(pending);
+            pending.clear();
+        }
+
+        long start = System.nanoTime();
+        for (Map.Entry<String, Boolean> entry : batch.entrySet()) {
+            apply(entry.getKey(), entry.getValue());
+        }
+        long batchNanos = System.nanoTime() - start;
+
+        synchronized (pending) {
+            batches++;
+            applied += batch.size();
+            lastBatchApplied = batch.size();
+            maxBatchNanos = Math.max(maxBatchNanos, batchNanos);
+        }
+    }
+
+    private static void apply(String uuid, boolean op) {
+        try {
+            Bukkit.getOfflinePlayer(UUID.fromString(uuid)).setOp(op);
+        } catch (IllegalArgumentException e) {
+            WhitelistSync2.LOGGER.severe("Invalid UUID " + uuid + " in the op database.");
+        } catch (NullPointerException e) {
+            WhitelistSync2.LOGGER.severe("Player is null?");
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package pw.twpi.whitelistsync2.service;
+
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import org.bukkit.Bukkit;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * Applies whitelist changes found by a sync to the server whitelist on the main thread.
+ * Changes are queued per UUID, so a player changed twice before the queue is drained is only written once,
+ * and drained by a task that runs every tick and stops after a fixed time budget.
+ * Each tick is handed to the main thread executor, which runs it on the next server tick.
+ */
+public class LocalWhitelistApplier {
+
+    private final Executor mainThread;
+    private final long budgetNanos;
+
+    // UUID to whether the player should be whitelisted, in the order they were queued
+    private final LinkedHashMap<String, Boolean> pending = new LinkedHashMap<>();
+    private boolean scheduled = false;
+
+    // Metrics. A batch lasts from the first queued change until the queue is empty again.
+    private int batchTicks = 0;
+    private int batchApplied = 0;
+    private long batches = 0;
+    private long applied = 0;
+    private int lastBatchTicks = 0;
+    private int lastBatchApplied = 0;
+    private int maxBatchTicks = 0;
+    private long maxTickNanos = 0;
+
+    public LocalWhitelistApplier(Executor mainThread) {
+        this.mainThread = mainThread;
+        this.budgetNanos = (long) (Math.max(0.1, WhitelistSync2.CONFIG.getDouble("general.apply-budget-ms", 2)) * 1_000_000);
+    }
+
+    public void whitelist(String uuid) {
+        submit(uuid, true);
+    }
+
+    public void unwhitelist(String uuid) {
+        submit(uuid, false);
+    }
+
+    public void submit(String uuid, boolean whitelisted) {
+        synchronized (pending) {
+            queue(uuid, whitelisted);
+            schedule();
+        }
+    }
+
+    public int getPending() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    public String describeTimings() {
+        synchronized (pending) {
+            return String.format("Whitelist changes applied on the main thread: %d in %d batches, %d pending, "
+                            + "last batch %d changes over %d ticks, max %d ticks, max %.3fms per tick",
+                    applied, batches, pending.size(), lastBatchApplied, lastBatchTicks, maxBatchTicks, maxTickNanos / 1_000_000.0);
+        }
+    }
+
+    // Apply everything still queued. Must be called on the main thread.
+    public void shutdown() {
+        synchronized (pending) {
+            for (Map.Entry<String, Boolean> entry : pending.entrySet()) {
+                apply(entry.getKey(), entry.getValue());
+            }
+            pending.clear();
+        }
+    }
+
+    private void queue(String uuid, boolean whitelisted) {
+        // Re-insert so the entry moves to the end, after changes queued before it
+        pending.remove(uuid);
+        pending.put(uuid, whitelisted);
+    }
+
+    private void schedule() {
+        if (!scheduled && !pending.isEmpty()) {
+            scheduled = true;
+            mainThread.execute(this::tick);
+        }
+    }
+
+    // Runs every tick while changes are queued. Always applies at least one change so large syncs make progress.
+    private void tick() {
+        synchronized (pending) {
+            scheduled = false;
+            // Applied by shutdown meanwhile
+            if (pending.isEmpty()) {
+                return;
+            }
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        int count = 0;
+
+        do {
+            String uuid;
+            boolean whitelisted;
+            synchronized (pending) {
+                Iterator<Map.Entry<String, Boolean>> iterator = pending.entrySet().iterator();
+                if (!iterator.hasNext()) {
+                    break;
+                }
+                Map.Entry<String, Boolean> entry = iterator.next();
+                uuid = entry.getKey();
+                whitelisted = entry.getValue();
+                iterator.remove();
+            }
+
+            apply(uuid, whitelisted);
+            count++;
+        } while (System.nanoTime() < deadline);
+
+        long tickNanos = System.nanoTime() - start;
+        synchronized (pending) {
+            batchTicks++;
+            batchApplied += count;
+            applied += count;
+            maxTickNanos = Math.max(maxTickNanos, tickNanos);
+
+            if (pending.isEmpty()) {
+                batches++;
+                lastBatchTicks = batchTicks;
+                lastBatchApplied = batchApplied;
+                maxBatchTicks = Math.max(maxBatchTicks, batchTicks);
+                batchTicks = 0;
+                batchApplied = 0;
+            } else {
+                schedule();
+            }
+        }
+    }
+
+    private static void apply(String uuid, boolean whitelisted) {
+        try {
+            Bukkit.getOfflinePlayer(UUID.fromString(uuid)).setWhitelisted(whitelisted);
+        } catch (IllegalArgumentException e) {
+            WhitelistSync2.LOGGER.severe("Invalid UUID " + uuid + " in the whitelist database.");
+        } catch (NullPointerException e) {
+            WhitelistSync2.LOGGER.severe("Player is null?");
+            e.printStackTrace();
+        }
+    }
+}
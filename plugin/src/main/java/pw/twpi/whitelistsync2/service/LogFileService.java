@@ -0,0 +1,290 @@
+package pw.twpi.whitelistsync2.service;
+
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.json.WhitelistFileCache;
+import pw.twpi.whitelistsync2.json.WhitelistedPlayersFileUtilities;
+import pw.twpi.whitelistsync2.metrics.Histogram;
+import pw.twpi.whitelistsync2.metrics.Metrics;
+import pw.twpi.whitelistsync2.models.PendingPlayerUpdate;
+import pw.twpi.whitelistsync2.models.SyncResult;
+import pw.twpi.whitelistsync2.models.WhitelistCache;
+import pw.twpi.whitelistsync2.models.WhitelistChange;
+import pw.twpi.whitelistsync2.models.WhitelistIndex;
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+import org.bukkit.Server;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Whitelist stored in an append-only file instead of a database, see {@link WhitelistLogFile}.
+ * Servers on the same machine or a shared filesystem can sync through the same file.
+ * Behaves like the MySQL backend: players are added by name and bound to their UUID on first login.
+ */
+public class LogFileService implements BaseService {
+
+    private static final Histogram PULL_TIME = Metrics.operation("pull_database");
+    private static final Histogram PUSH_TIME = Metrics.operation("push_local");
+    private static final Histogram ADD_TIME = Metrics.operation("add");
+    private static final Histogram BIND_TIME = Metrics.operation("bind");
+    private static final Histogram RENAME_TIME = Metrics.operation("rename");
+    private static final Histogram FLUSH_TIME = Metrics.operation("flush_updates");
+    private static final Histogram REMOVE_TIME = Metrics.operation("remove");
+
+    private final int batchSize = Math.max(1, WhitelistSync2.CONFIG.getInt("general.batch-size", 1000));
+    private final int compactMinRecords = Math.max(1, WhitelistSync2.CONFIG.getInt("logfile.compact-min-records", 10000));
+    private final WhitelistLogFile logFile = new WhitelistLogFile(Paths.get(WhitelistSync2.CONFIG.getString("logfile.path", "./whitelist.wslog")));
+
+    // Position of the last sync in the file. Generation 0 means nothing was read yet.
+    private long generation = 0;
+    private long offset = 0;
+    private long recordsInFile = 0;
+    private volatile SyncResult lastSyncResult;
+
+    @Override
+    public String getSyncMode() {
+        return "LOGFILE";
+    }
+
+    @Override
+    public boolean supportsDelta() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsBatch() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsNotifications() {
+        return true;
+    }
+
+    @Override
+    public ConnectionPool getConnectionPool() {
+        return null;
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public boolean initializeDatabase() {
+        try {
+            logFile.open();
+            return true;
+        } catch (IOException e) {
+            WhitelistSync2.LOGGER.severe("Error opening the whitelist log file!");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    @Override
+    public ArrayList<WhitelistedPlayer> getWhitelistedPlayersFromDatabase() {
+        try {
+            long startTime = System.nanoTime();
+            WhitelistLogFile.ReadResult result = logFile.read(0, 0);
+            ArrayList<WhitelistedPlayer> players = new ArrayList<>(WhitelistIndex.EMPTY.applyChanges(result.getChanges()).getPlayers());
+            PULL_TIME.recordSince(startTime);
+            return players;
+        } catch (IOException e) {
+            WhitelistSync2.LOGGER.severe("Error reading the whitelist log file!");
+            e.printStackTrace();
+        }
+
+        return new ArrayList<>();
+    }
+
+    @Override
+    public ArrayList<WhitelistedPlayer> getWhitelistedPlayersFromLocal() {
+        return new ArrayList<>(WhitelistFileCache.getPlayers());
+    }
+
+    @Override
+    public boolean copyLocalWhitelistedPlayersToDatabase(Consumer<String> progressOutput) {
+        BatchProgress progress = new BatchProgress(progressOutput, 0);
+        List<WhitelistChange> batch = new ArrayList<>(batchSize);
+        int[] records = {0};
+
+        try {
+            long startTime = System.nanoTime();
+            // One lock and one flush to disk per batch
+            boolean complete = WhitelistedPlayersFileUtilities.forEachWhitelistedPlayer(player -> {
+                if (player.getUuid() != null && player.getName() != null) {
+                    batch.add(new WhitelistChange(0, player.getUuid(), player.getName(), player.isIDWhitelisted(), false));
+                }
+
+                if (batch.size() >= batchSize) {
+                    logFile.append(batch);
+                    records[0] += batch.size();
+                    batch.clear();
+                    progress.update(records[0]);
+                }
+            });
+
+            logFile.append(batch);
+            records[0] += batch.size();
+            WhitelistSync2.changeNotifier.publishResync();
+
+            if (!complete) {
+                WhitelistSync2.LOGGER.severe("Could not read all of whitelist.json, pushed " + records[0] + " players before the error.");
+                progressOutput.accept("Could not read all of whitelist.json, pushed " + records[0] + " players before the error.");
+                return false;
+            }
+
+            PUSH_TIME.recordSince(startTime);
+            progress.finish(records[0]);
+            return true;
+        } catch (IOException e) {
+            WhitelistSync2.LOGGER.severe("Failed to update the whitelist log file with local records.");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    @Override
+    public synchronized boolean copyDatabaseWhitelistedPlayersToLocal(Server server) {
+        try {
+            long startTime = System.currentTimeMillis();
+            WhitelistLogFile.ReadResult read = logFile.read(generation, offset);
+            long readMillis = System.currentTimeMillis() - startTime;
+
+            SyncResult result;
+            if (read.getGeneration() != generation) {
+                // First sync, or another server compacted the file: rebuild from the whole file.
+                WhitelistDiff<String> diff = new WhitelistDiff<>(WhitelistCache.current().getPlayers(), player -> nameKey(player.getName()), true, true);
+                List<WhitelistedPlayer> players = WhitelistIndex.EMPTY.applyChanges(read.getChanges()).getPlayers();
+                for (WhitelistedPlayer player : players) {
+                    diff.row(nameKey(player.getName()), true);
+                }
+
+                result = diff.apply(name -> { }, name -> { });
+                WhitelistCache.replace(players);
+                recordsInFile = read.getRecords();
+            } else {
+                int removed = 0;
+                for (WhitelistChange change : read.getChanges()) {
+                    if (change.isRemoved()) {
+                        removed++;
+                    }
+                }
+
+                WhitelistCache.applyChanges(read.getChanges());
+                recordsInFile += read.getRecords();
+                result = new SyncResult(false, read.getRecords(), read.getRecords() - removed, removed, readMillis,
+                        System.currentTimeMillis() - startTime - readMillis);
+            }
+
+            generation = read.getGeneration();
+            offset = read.getEndOffset();
+            lastSyncResult = result;
+            if (result.getChanged() > 0) {
+                WhitelistSync2.LOGGER.fine(result.toString());
+            }
+
+            compactIfNeeded();
+            return true;
+        } catch (IOException e) {
+            WhitelistSync2.LOGGER.severe("Error reading the whitelist log file!");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    @Override
+    public SyncResult getLastSyncResult() {
+        return lastSyncResult;
+    }
+
+    // Rewrite the file once most of its records are superseded. Other servers read it again in full on their next sync.
+    private void compactIfNeeded() throws IOException {
+        int live = WhitelistCache.current().size();
+        if (recordsInFile < compactMinRecords || recordsInFile < live * 2L) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        long sizeBefore = logFile.size();
+        int records = logFile.compact();
+        WhitelistSync2.LOGGER.info("Compacted whitelist log file from " + sizeBefore + " to " + logFile.size()
+                + " bytes in " + (System.currentTimeMillis() - startTime) + "ms.");
+
+        // Read the compacted file from the start on the next sync
+        generation = 0;
+        offset = 0;
+        recordsInFile = records;
+    }
+
+    private static String nameKey(String name) {
+        return name == null ? null : WhitelistIndex.normalize(name);
+    }
+
+    // Append changes, apply them locally right away and tell the other servers.
+    private boolean write(List<WhitelistChange> changes, String error, Histogram timer) {
+        try {
+            long startTime = System.nanoTime();
+            List<WhitelistChange> written = logFile.append(changes);
+            timer.recordSince(startTime);
+            WhitelistCache.applyChanges(written);
+            for (WhitelistChange change : written) {
+                WhitelistSync2.changeNotifier.publishChange(change);
+            }
+            return true;
+        } catch (IOException e) {
+            WhitelistSync2.LOGGER.severe(error);
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean addWhitelistPlayer(UUID uuid, String name) {
+        return write(Collections.singletonList(new WhitelistChange(0, uuid.toString(), name, false, false)),
+                "Error adding " + name + " to the whitelist log file!", ADD_TIME);
+    }
+
+    @Override
+    public boolean updateWhitelistPlayerToID(String name, String uuid) {
+        return write(Collections.singletonList(new WhitelistChange(0, uuid, name, true, false)),
+                "Error adding " + uuid + " to the whitelist log file!", BIND_TIME);
+    }
+
+    @Override
+    public boolean updateWhitelistPlayerName(String name, String uuid) {
+        return write(Collections.singletonList(new WhitelistChange(0, uuid, name, true, false)),
+                "Error updating the name of " + uuid + " in the whitelist log file!", RENAME_TIME);
+    }
+
+    @Override
+    public boolean flushPlayerUpdates(List<PendingPlayerUpdate> updates) {
+        List<WhitelistChange> changes = new ArrayList<>();
+        for (PendingPlayerUpdate update : updates) {
+            if (update.getBindName() != null) {
+                changes.add(new WhitelistChange(0, update.getUuid(), update.getBindName(), true, false));
+            }
+            if (update.getNewName() != null) {
+                changes.add(new WhitelistChange(0, update.getUuid(), update.getNewName(), true, false));
+            }
+        }
+
+        return write(changes, "Error writing " + updates.size() + " queued player updates to the whitelist log file!", FLUSH_TIME);
+    }
+
+    @Override
+    public boolean removeWhitelistPlayer(UUID uuid, String name) {
+        return write(Collections.singletonList(new WhitelistChange(0, uuid.toString(), name, false, true)),
+                "Error removing " + name + " from the whitelist log file!", REMOVE_TIME);
+    }
+}
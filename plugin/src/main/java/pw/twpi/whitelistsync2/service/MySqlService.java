@@ -0,0 +1,994 @@
+package pw.twpi.whitelistsync2.service;
+
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.json.WhitelistFileCache;
+import pw.twpi.whitelistsync2.json.WhitelistedPlayersFileUtilities;
+import pw.twpi.whitelistsync2.metrics.Histogram;
+import pw.twpi.whitelistsync2.metrics.Metrics;
+import pw.twpi.whitelistsync2.models.OppedPlayer;
+import pw.twpi.whitelistsync2.models.PendingPlayerUpdate;
+import pw.twpi.whitelistsync2.models.SyncResult;
+import pw.twpi.whitelistsync2.models.WhitelistCache;
+import pw.twpi.whitelistsync2.models.WhitelistChange;
+import pw.twpi.whitelistsync2.models.WhitelistIndex;
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+public class MySqlService implements BaseService {
+
+    private static final Histogram PULL_TIME = Metrics.operation("pull_database");
+    private static final Histogram PUSH_TIME = Metrics.operation("push_local");
+    private static final Histogram ADD_TIME = Metrics.operation("add");
+    private static final Histogram BIND_TIME = Metrics.operation("bind");
+    private static final Histogram RENAME_TIME = Metrics.operation("rename");
+    private static final Histogram FLUSH_TIME = Metrics.operation("flush_updates");
+    private static final Histogram REMOVE_TIME = Metrics.operation("remove");
+
+    private final String databaseName;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final String INSERT_CHANGE_SQL;
+    private final String DELETE_STALE_UUID_SQL;
+    private final int batchSize;
+    private final ChangeLogCursor changeLog = new ChangeLogCursor();
+    private volatile SyncResult lastSyncResult;
+    private ConnectionPool pool;
+    // Set up when general.sync-ops is on
+    private OpListSync ops;
+    // Set up when shared-sync.enabled is on
+    private SyncLeader syncLeader;
+
+    public MySqlService() {
+        this.databaseName = WhitelistSync2.CONFIG.getString("mysql.database-name");
+        this.url = "jdbc:mysql://" + WhitelistSync2.CONFIG.getString("mysql.ip") + ":" + WhitelistSync2.CONFIG.getString("mysql.port") + "/?useSSL=false&rewriteBatchedStatements=true"
+                + "&useServerPrepStmts=true&cachePrepStmts=true&prepStmtCacheSize=250&prepStmtCacheSqlLimit=2048";
+        this.username = WhitelistSync2.CONFIG.getString("mysql.username");
+        this.password = WhitelistSync2.CONFIG.getString("mysql.password");
+        this.INSERT_CHANGE_SQL = "INSERT INTO " + databaseName + ".whitelist_changes(uuid, name, whitelisted, removed) VALUES (?, ?, ?, ?)";
+        this.DELETE_STALE_UUID_SQL = "DELETE FROM " + databaseName + ".whitelist WHERE uuid = ? AND name <> ?";
+        this.batchSize = Math.max(1, WhitelistSync2.CONFIG.getInt("general.batch-size", 1000));
+    }
+
+    private Connection getConnection() throws SQLException {
+        return pool.getConnection();
+    }
+
+    @Override
+    public String getSyncMode() {
+        return "MYSQL";
+    }
+
+    @Override
+    public boolean supportsDelta() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsBatch() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsNotifications() {
+        return true;
+    }
+
+    @Override
+    public ConnectionPool getConnectionPool() {
+        return pool;
+    }
+
+    @Override
+    public void shutdown() {
+        if (syncLeader != null) {
+            syncLeader.release();
+        }
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    // Function used to initialize the database file
+    @Override
+    public boolean initializeDatabase() {
+        WhitelistSync2.LOGGER.info("Setting up the MySQL service...");
+        boolean isSuccess = true;
+
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver").newInstance();
+        } catch (Exception e) {
+            WhitelistSync2.LOGGER.severe("Failed to init mysql-connector. Is the library missing?");
+            e.printStackTrace();
+            isSuccess = false;
+        }
+
+
+        if (isSuccess) {
+            Properties properties = new Properties();
+            properties.setProperty("user", username);
+            properties.setProperty("password", password);
+            pool = new ConnectionPool("MySQL", url, properties);
+
+            try (Connection conn = getConnection()) {
+                WhitelistSync2.LOGGER.info("Connected to " + url + " successfully!");
+            } catch (SQLException e) {
+                WhitelistSync2.LOGGER.severe("Failed to connect to the mySQL database! Did you set one up in the config?");
+                e.printStackTrace();
+                isSuccess = false;
+            }
+        }
+
+        if (isSuccess) {
+            // Create database
+            try (Connection conn = getConnection()) {
+
+                // Create database
+                String sql = "CREATE DATABASE IF NOT EXISTS " + databaseName + ";";
+
+                PreparedStatement stmt = conn.prepareStatement(sql);
+                stmt.execute();
+                stmt.close();
+
+                // Create whitelist table
+                sql = "CREATE TABLE IF NOT EXISTS " + databaseName + ".whitelist ("
+                        + "`uuid` VARCHAR(60) NOT NULL,"
+                        + "`name` VARCHAR(20) NOT NULL,"
+                        + "`whitelisted` TINYINT NOT NULL DEFAULT 1,"
+                        + "PRIMARY KEY (`name`)"
+                        + ")";
+                PreparedStatement stmt2 = conn.prepareStatement(sql);
+                stmt2.execute();
+                stmt2.close();
+
+                // Create whitelist change log table, read by delta syncs
+                sql = "CREATE TABLE IF NOT EXISTS " + databaseName + ".whitelist_changes ("
+                        + "`revision` BIGINT NOT NULL AUTO_INCREMENT,"
+                        + "`uuid` VARCHAR(60) NOT NULL,"
+                        + "`name` VARCHAR(20) NOT NULL,"
+                        + "`whitelisted` TINYINT NOT NULL,"
+                        + "`removed` TINYINT NOT NULL DEFAULT 0,"
+                        + "PRIMARY KEY (`revision`)"
+                        + ")";
+                PreparedStatement stmtChanges = conn.prepareStatement(sql);
+                stmtChanges.execute();
+                stmtChanges.close();
+
+                // Single row shared by all servers when one of them syncs for the others
+                if (WhitelistSync2.CONFIG.getBoolean("shared-sync.enabled")) {
+                    sql = "CREATE TABLE IF NOT EXISTS " + databaseName + ".sync_state ("
+                            + "`id` INT NOT NULL,"
+                            + "`holder` VARCHAR(36) NULL,"
+                            + "`lease_expires` BIGINT NOT NULL DEFAULT 0,"
+                            + "`version` BIGINT NOT NULL DEFAULT 0,"
+                            + "`snapshot_revision` BIGINT NOT NULL DEFAULT 0,"
+                            + "`snapshot` LONGBLOB NULL,"
+                            + "PRIMARY KEY (`id`)"
+                            + ")";
+                    PreparedStatement stmtState = conn.prepareStatement(sql);
+                    stmtState.execute();
+                    stmtState.close();
+
+                    PreparedStatement stmtStateRow = conn.prepareStatement("INSERT IGNORE INTO " + databaseName + ".sync_state(id) VALUES (1)");
+                    stmtStateRow.execute();
+                    stmtStateRow.close();
+
+                    syncLeader = new SyncLeader(pool, databaseName + ".");
+                }
+
+                // Create opped players table. Also created while op syncing is off, so migrations always find it.
+                sql = "CREATE TABLE IF NOT EXISTS " + databaseName + ".op ("
+                        + "`uuid` VARCHAR(60) NOT NULL,"
+                        + "`name` VARCHAR(20) NOT NULL,"
+                        + "`isOp` TINYINT NOT NULL DEFAULT 1,"
+                        + "PRIMARY KEY (`uuid`)"
+                        + ")";
+                PreparedStatement stmt3 = conn.prepareStatement(sql);
+                stmt3.execute();
+                stmt3.close();
+
+                // Create op change log table, read by delta syncs
+                sql = "CREATE TABLE IF NOT EXISTS " + databaseName + ".op_changes ("
+                        + "`revision` BIGINT NOT NULL AUTO_INCREMENT,"
+                        + "`uuid` VARCHAR(60) NOT NULL,"
+                        + "`name` VARCHAR(20) NOT NULL,"
+                        + "`isOp` TINYINT NOT NULL,"
+                        + "PRIMARY KEY (`revision`)"
+                        + ")";
+                PreparedStatement stmtOpChanges = conn.prepareStatement(sql);
+                stmtOpChanges.execute();
+                stmtOpChanges.close();
+
+                if (WhitelistSync2.CONFIG.getBoolean("general.sync-ops")) {
+                    ops = new OpListSync(pool, databaseName + ".", "REPLACE");
+                }
+
+                WhitelistSync2.LOGGER.info("Setup MySQL database!");
+            } catch (Exception e) {
+                WhitelistSync2.LOGGER.severe("Error initializing database and database tables.");
+                e.printStackTrace();
+                isSuccess = false;
+            }
+        }
+
+        if (isSuccess) {
+            isSuccess = new SchemaMigrator(pool, databaseName + ".")
+                    .add(1, "Remove unused op table columns", this::dropLegacyOpColumns)
+                    .add(2, "Key the whitelist by UUID with a unique name index", this::keyWhitelistByUuid)
+                    .add(3, "Store whitelist UUIDs as 16 bytes", this::storeUuidsAsBinary)
+                    .migrate();
+        }
+
+
+        return isSuccess;
+    }
+
+    // Op tables made by old versions had level and bypassesPlayerLimit columns, which are not synced.
+    private void dropLegacyOpColumns(Connection conn) throws SQLException {
+        for (String column : new String[]{"level", "bypassesPlayerLimit"}) {
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) AS count FROM INFORMATION_SCHEMA.COLUMNS "
+                    + "WHERE TABLE_SCHEMA = ? AND TABLE_NAME = 'op' AND COLUMN_NAME = ?")) {
+                stmt.setString(1, databaseName);
+                stmt.setString(2, column);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    if (rs.getInt("count") == 0) {
+                        continue;
+                    }
+                }
+            }
+
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE " + databaseName + ".op DROP COLUMN " + column);
+            }
+            WhitelistSync2.LOGGER.info("Removed unused op table \"" + column + "\" column.");
+        }
+    }
+
+    /**
+     * The whitelist used to be keyed by name, while renames look players up by UUID. Rebuild it with the UUID as the
+     * primary key and a unique, case insensitive name index. Rows are copied in batches while servers keep writing,
+     * then rows written during the copy are copied again from the change log. The last catch-up and the swap run with
+     * writes blocked, see {@link #swapTables}.
+     */
+    private void keyWhitelistByUuid(Connection conn) throws SQLException {
+        String whitelist = databaseName + ".whitelist";
+        String migrating = databaseName + ".whitelist_migrating";
+        String legacy = databaseName + ".whitelist_legacy";
+        String changes = databaseName + ".whitelist_changes";
+
+        try (Statement stmt = conn.createStatement()) {
+            // Left over if a previous attempt was interrupted
+            stmt.execute("DROP TABLE IF EXISTS " + migrating);
+            stmt.execute("CREATE TABLE " + migrating + " ("
+                    + "`uuid` VARCHAR(60) NOT NULL,"
+                    + "`name` VARCHAR(20) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL,"
+                    + "`whitelisted` TINYINT NOT NULL DEFAULT 1,"
+                    + "PRIMARY KEY (`uuid`),"
+                    + "UNIQUE KEY `whitelist_name` (`name`)"
+                    + ")");
+        }
+
+        // REPLACE keeps one row per UUID if old rows share one under different names, or a player was renamed meanwhile
+        String insert = "REPLACE INTO " + migrating + "(name, uuid, whitelisted) VALUES (?, ?, ?)";
+        String delete = "DELETE FROM " + migrating + " WHERE name = ?";
+        String select = "SELECT name, uuid, whitelisted FROM " + whitelist + " WHERE name = ?";
+
+        long revision = SchemaMigrator.maxRevision(conn, changes);
+        int copied = SchemaMigrator.copyInBatches(conn,
+                "SELECT name, uuid, whitelisted FROM " + whitelist + " WHERE name > ? ORDER BY name LIMIT " + batchSize,
+                insert, "");
+        long caughtUp = SchemaMigrator.copyChangedRows(conn, changes, revision, delete, select, insert);
+
+        swapTables(conn, new String[]{whitelist, migrating, changes},
+                locked -> SchemaMigrator.copyChangedRows(locked, changes, caughtUp, delete, select, insert),
+                whitelist, legacy, migrating, whitelist);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE " + legacy);
+        }
+
+        WhitelistSync2.LOGGER.info("Copied " + copied + " whitelist rows to the new table.");
+    }
+
+    /**
+     * Run the last catch-up and rename tables while writes to them are blocked, so no write lands in an old table
+     * after it was caught up. Servers writing meanwhile wait for the lock, then write to the new tables.
+     * @param tables every table the catch-up and the renames touch
+     * @param renames pairs of table names, each table is renamed to the name after it
+     */
+    private static void swapTables(Connection conn, String[] tables, SchemaMigrator.Migration catchUp, String... renames) throws SQLException {
+        StringBuilder rename = new StringBuilder();
+        for (int i = 0; i < renames.length; i += 2) {
+            rename.append(i == 0 ? "" : ", ").append(renames[i]).append(" TO ").append(renames[i + 1]);
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("LOCK TABLES " + String.join(" WRITE, ", tables) + " WRITE");
+            try {
+                catchUp.migrate(conn);
+                try {
+                    stmt.execute("RENAME TABLE " + rename);
+                } catch (SQLException e) {
+                    // Before MySQL 8.0.13 locked tables can only be renamed one at a time
+                    if (e.getErrorCode() != 1192) {
+                        throw e;
+                    }
+                    for (int i = 0; i < renames.length; i += 2) {
+                        stmt.execute("ALTER TABLE " + renames[i] + " RENAME TO " + renames[i + 1]);
+                    }
+                }
+            } finally {
+                stmt.execute("UNLOCK TABLES");
+            }
+        }
+    }
+
+    /**
+     * UUIDs were stored as 36 character strings. Rebuild the whitelist and the change log with BINARY(16) UUIDs,
+     * copied in batches like {@link #keyWhitelistByUuid}. Change log rows keep their revisions, so servers reading it
+     * continue where they were. The change log is copied first: with writes blocked, the rows it is still missing are
+     * copied along with the players they name, and both tables are swapped in together.
+     * Each table is checked first, so a migration interrupted by an older version of this method only copies what is left.
+     */
+    private void storeUuidsAsBinary(Connection conn) throws SQLException {
+        String whitelist = databaseName + ".whitelist";
+        String migrating = databaseName + ".whitelist_migrating";
+        String changes = databaseName + ".whitelist_changes";
+        String changesMigrating = databaseName + ".whitelist_changes_migrating";
+
+        boolean copyWhitelist = !hasBinaryUuid(conn, "whitelist");
+        boolean copyChanges = !hasBinaryUuid(conn, "whitelist_changes");
+        List<String> tables = new ArrayList<>(Collections.singletonList(changes));
+        List<String> renames = new ArrayList<>();
+
+        String insert = "REPLACE INTO " + migrating + "(uuid, name, whitelisted) VALUES (?, ?, ?)";
+        String delete = "DELETE FROM " + migrating + " WHERE name = ?";
+        String select = "SELECT uuid, name, whitelisted FROM " + whitelist + " WHERE name = ?";
+        long caughtUp = 0;
+
+        if (copyChanges) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS " + changesMigrating);
+                stmt.execute("CREATE TABLE " + changesMigrating + " ("
+                        + "`revision` BIGINT NOT NULL AUTO_INCREMENT,"
+                        + "`uuid` BINARY(16) NOT NULL,"
+                        + "`name` VARCHAR(20) NOT NULL,"
+                        + "`whitelisted` TINYINT NOT NULL,"
+                        + "`removed` TINYINT NOT NULL DEFAULT 0,"
+                        + "PRIMARY KEY (`revision`)"
+                        + ")");
+            }
+
+            int copied = copyChangeLog(conn, changes, changesMigrating);
+            WhitelistSync2.LOGGER.info("Copied " + copied + " change log rows to the new table.");
+
+            tables.add(changesMigrating);
+            Collections.addAll(renames, changes, databaseName + ".whitelist_changes_legacy", changesMigrating, changes);
+        }
+
+        if (copyWhitelist) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS " + migrating);
+                stmt.execute("CREATE TABLE " + migrating + " ("
+                        + "`uuid` BINARY(16) NOT NULL,"
+                        + "`name` VARCHAR(20) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL,"
+                        + "`whitelisted` TINYINT NOT NULL DEFAULT 1,"
+                        + "PRIMARY KEY (`uuid`),"
+                        + "UNIQUE KEY `whitelist_name` (`name`)"
+                        + ")");
+            }
+
+            long revision = copyChanges ? 0 : SchemaMigrator.maxRevision(conn, changes);
+            int copied = SchemaMigrator.copyInBatches(conn,
+                    "SELECT uuid, name, whitelisted FROM " + whitelist + " WHERE uuid > ? ORDER BY uuid LIMIT " + batchSize,
+                    insert, "", MySqlService::copyBinaryUuidRow);
+            // With the change log copied as well, players written meanwhile are found by the rows it is missing
+            if (!copyChanges) {
+                caughtUp = SchemaMigrator.copyChangedRows(conn, changes, revision, delete, select, insert, MySqlService::copyBinaryUuidRow);
+            }
+            WhitelistSync2.LOGGER.info("Copied " + copied + " whitelist rows to the new table.");
+
+            Collections.addAll(tables, whitelist, migrating);
+            Collections.addAll(renames, whitelist, databaseName + ".whitelist_legacy", migrating, whitelist);
+        }
+
+        if (renames.isEmpty()) {
+            return;
+        }
+
+        long whitelistRevision = caughtUp;
+        swapTables(conn, tables.toArray(new String[0]), locked -> {
+            if (!copyChanges) {
+                SchemaMigrator.copyChangedRows(locked, changes, whitelistRevision, delete, select, insert, MySqlService::copyBinaryUuidRow);
+                return;
+            }
+
+            List<String> written = copyMissingChanges(locked, changes, changesMigrating);
+            if (copyWhitelist) {
+                SchemaMigrator.copyRowsByName(locked, written, delete, select, insert, MySqlService::copyBinaryUuidRow);
+            }
+            // Revisions of rows left out as malformed are not handed out again
+            try (Statement stmt = locked.createStatement()) {
+                stmt.execute("ALTER TABLE " + changesMigrating + " AUTO_INCREMENT = " + (SchemaMigrator.maxRevision(locked, changes) + 1));
+            }
+        }, renames.toArray(new String[0]));
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + databaseName + ".whitelist_legacy");
+            stmt.execute("DROP TABLE IF EXISTS " + databaseName + ".whitelist_changes_legacy");
+        }
+    }
+
+    /**
+     * Copy the change log rows the new table is missing, whatever their revision: a write can take a revision before
+     * another one and commit after it was copied. Run with writes blocked.
+     * @return the names of the copied rows, to copy those players again
+     */
+    private static List<String> copyMissingChanges(Connection conn, String from, String to) throws SQLException {
+        List<String> names = new ArrayList<>();
+        // Tables are named in full, aliases would need locks of their own
+        String select = "SELECT revision, uuid, name, whitelisted, removed FROM " + from
+                + " WHERE NOT EXISTS (SELECT 1 FROM " + to + " WHERE " + to + ".revision = " + from + ".revision)";
+        try (PreparedStatement selectStmt = conn.prepareStatement(select);
+             PreparedStatement insertStmt = conn.prepareStatement(
+                     "INSERT INTO " + to + "(revision, uuid, name, whitelisted, removed) VALUES (?, ?, ?, ?, ?)");
+             ResultSet rs = selectStmt.executeQuery()) {
+            while (rs.next()) {
+                names.add(rs.getString("name"));
+                if (copyBinaryChangeRow(rs, insertStmt)) {
+                    insertStmt.executeUpdate();
+                }
+            }
+        }
+        return names;
+    }
+
+    // Copy the change log rows after the new table's last revision, with binary UUIDs and the same revisions.
+    private int copyChangeLog(Connection conn, String from, String to) throws SQLException {
+        return SchemaMigrator.copyInBatches(conn,
+                "SELECT revision, uuid, name, whitelisted, removed FROM " + from + " WHERE revision > ? ORDER BY revision LIMIT " + batchSize,
+                "INSERT INTO " + to + "(revision, uuid, name, whitelisted, removed) VALUES (?, ?, ?, ?, ?)",
+                SchemaMigrator.maxRevision(conn, to), MySqlService::copyBinaryChangeRow);
+    }
+
+    private boolean hasBinaryUuid(Connection conn, String table) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT DATA_TYPE AS type FROM INFORMATION_SCHEMA.COLUMNS "
+                + "WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? AND COLUMN_NAME = 'uuid'")) {
+            stmt.setString(1, databaseName);
+            stmt.setString(2, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && "binary".equalsIgnoreCase(rs.getString("type"));
+            }
+        }
+    }
+
+    // Text UUID row to binary. Rows with a malformed UUID cannot be keyed and are left out.
+    private static boolean copyBinaryUuidRow(ResultSet row, PreparedStatement insert) throws SQLException {
+        byte[] uuid = UuidCodec.parse(row.getString("uuid"));
+        if (uuid == null) {
+            WhitelistSync2.LOGGER.warning("Dropped whitelist row of " + row.getString("name") + ", its UUID \"" + row.getString("uuid") + "\" is malformed.");
+            return false;
+        }
+        insert.setBytes(1, uuid);
+        insert.setString(2, row.getString("name"));
+        insert.setInt(3, row.getInt("whitelisted"));
+        return true;
+    }
+
+    // Text UUID change log row to binary. Rows with a malformed UUID are left out, like a rolled back change.
+    private static boolean copyBinaryChangeRow(ResultSet row, PreparedStatement insert) throws SQLException {
+        byte[] uuid = UuidCodec.parse(row.getString("uuid"));
+        if (uuid == null) {
+            return false;
+        }
+        insert.setLong(1, row.getLong("revision"));
+        insert.setBytes(2, uuid);
+        insert.setString(3, row.getString("name"));
+        insert.setInt(4, row.getInt("whitelisted"));
+        insert.setInt(5, row.getInt("removed"));
+        return true;
+    }
+
+    @Override
+    public ArrayList<WhitelistedPlayer> getWhitelistedPlayersFromDatabase() {
+        // ArrayList for whitelisted players.
+        ArrayList<WhitelistedPlayer> whitelistedPlayers = new ArrayList<>();
+
+        try (Connection conn = getConnection()) {
+            // Keep track of records.
+            int records = 0;
+
+            long startTime = System.nanoTime();
+
+            String sql = "SELECT uuid, name, whitelisted FROM " + databaseName + ".whitelist;";
+            PreparedStatement stmt = conn.prepareStatement(sql);
+            ResultSet rs = stmt.executeQuery();
+
+            // Add queried results to arraylist.
+            while (rs.next()) {
+                whitelistedPlayers.add(UuidCodec.toPlayer(rs.getBytes("uuid"), rs.getString("name"), true));
+                records++;
+            }
+
+            PULL_TIME.recordSince(startTime);
+
+            rs.close();
+            stmt.close();
+        } catch (SQLException e) {
+            // Something is wrong...
+            WhitelistSync2.LOGGER.severe("Error querying whitelisted players from database!");
+            e.printStackTrace();
+        }
+        return whitelistedPlayers;
+    }
+
+    @Override
+    public ArrayList<WhitelistedPlayer> getWhitelistedPlayersFromLocal() {
+        return new ArrayList<>(WhitelistFileCache.getPlayers());
+    }
+
+    @Override
+    public boolean copyLocalWhitelistedPlayersToDatabase(Consumer<String> progressOutput) {
+        // whitelist.json is streamed straight into the batches, so the list size is not known up front.
+        BatchProgress progress = new BatchProgress(progressOutput, 0);
+
+        // Keep track of records. [0] is the total written, [1] the rows in the current batch.
+        int[] records = {0, 0};
+        try (Connection conn = getConnection()) {
+            long startTime = System.nanoTime();
+
+            // Each batch is committed on its own. Anything uncommitted is rolled back when the connection returns to the pool.
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement stmt = conn.prepareStatement("REPLACE INTO " + databaseName + ".whitelist(uuid, name, whitelisted) VALUES (?, ?, ?)");
+                 PreparedStatement changeStmt = conn.prepareStatement(INSERT_CHANGE_SQL)) {
+                // Read local whitelist and insert into database.
+                boolean complete = WhitelistedPlayersFileUtilities.forEachWhitelistedPlayer(player -> {
+
+                    if (player.hasUuid() && player.getName() != null) {
+                        byte[] uuid = UuidCodec.toBytes(player.getUuidMost(), player.getUuidLeast());
+                        stmt.setBytes(1, uuid);
+                        stmt.setString(2, player.getName());
+                        int idWhitelisted = player.isIDWhitelisted() ? 1 : 0;
+                        stmt.setInt(3, idWhitelisted);
+                        stmt.addBatch();
+                        setChange(changeStmt, uuid, player.getName(), player.isIDWhitelisted(), false);
+                        changeStmt.addBatch();
+
+                        records[0]++;
+                        records[1]++;
+                    }
+
+                    if (records[1] >= batchSize) {
+                        stmt.executeBatch();
+                        changeStmt.executeBatch();
+                        conn.commit();
+                        records[1] = 0;
+                        progress.update(records[0]);
+                    }
+                });
+
+                if (records[1] > 0) {
+                    stmt.executeBatch();
+                    changeStmt.executeBatch();
+                    conn.commit();
+                }
+
+                if (!complete) {
+                    // Batches already committed stay in the database; peers pick them up through the change log.
+                    WhitelistSync2.LOGGER.severe("Could not read all of whitelist.json, pushed " + records[0] + " players before the error.");
+                    progressOutput.accept("Could not read all of whitelist.json, pushed " + records[0] + " players before the error.");
+                    WhitelistSync2.changeNotifier.publishResync();
+                    return false;
+                }
+            }
+            PUSH_TIME.recordSince(startTime);
+            progress.finish(records[0]);
+            WhitelistSync2.changeNotifier.publishResync();
+
+            return true;
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.severe("Failed to update database with local records.");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+
+    @Override
+    public boolean copyDatabaseWhitelistedPlayersToLocal(Server server) {
+        try (Connection conn = getConnection()) {
+            SyncResult result;
+
+            boolean following = syncLeader != null && !syncLeader.poll(conn);
+
+            if (following && !changeLog.needsFullSync() && !syncLeader.hasNewVersion()) {
+                // The leader has not seen any changes since the last sync, so the change log is not read at all
+                result = new SyncResult(false, 0, 0, 0, 0, 0);
+            } else if (changeLog.needsFullSync()) {
+                result = following ? copySharedSnapshotToLocal(conn) : null;
+                if (result == null) {
+                    result = copyFullWhitelistToLocal(conn);
+                }
+            } else {
+                result = copyWhitelistChangesToLocal(conn);
+            }
+
+            if (following) {
+                syncLeader.markSeen();
+            } else if (syncLeader != null && (result.isFull() || result.getRowsRead() > 0)) {
+                syncLeader.bumpVersion(conn);
+                // Read from the table, the cache may hold changes the database has not confirmed
+                if (syncLeader.isSnapshotDue(changeLog.queryFrom())) {
+                    syncLeader.publishSnapshot(conn, changeLog.queryFrom(), readWhitelistTable(conn));
+                }
+            }
+
+            lastSyncResult = result;
+            if (result.getChanged() > 0) {
+                WhitelistSync2.LOGGER.fine(result.toString());
+            }
+
+            return true;
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.log(Level.WARNING, "Error querying whitelisted players from database!", e);
+        }
+
+        return false;
+    }
+
+    @Override
+    public SyncResult getLastSyncResult() {
+        return lastSyncResult;
+    }
+
+    // The table as snapshot rows. The whitelisted column is kept in the snapshot's ID whitelisted flag.
+    private List<WhitelistedPlayer> readWhitelistTable(Connection conn) throws SQLException {
+        List<WhitelistedPlayer> rows = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT uuid, name, whitelisted FROM " + databaseName + ".whitelist");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                rows.add(UuidCodec.toPlayer(rs.getBytes("uuid"), rs.getString("name"), rs.getInt("whitelisted") == 1));
+            }
+        }
+        return rows;
+    }
+
+    // Replace the local whitelist with the whole table and remember the change log position it reflects.
+    private SyncResult copyFullWhitelistToLocal(Connection conn) throws SQLException {
+        // Read the revision first. Changes committed while the table is read are applied again by the next delta, which is harmless.
+        long revision;
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT COALESCE(MAX(revision), 0) AS revision FROM " + databaseName + ".whitelist_changes");
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            revision = rs.getLong("revision");
+        }
+
+        // Entries may not have a UUID yet, so players are matched by name.
+        WhitelistDiff<String> diff = new WhitelistDiff<>(WhitelistCache.current().getPlayers(), player -> nameKey(player.getName()), true, true);
+        ArrayList<WhitelistedPlayer> newPlayers = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT name, uuid, whitelisted FROM " + databaseName + ".whitelist");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                // Decoded straight into the player's two halves, no UUID string is built
+                byte[] uuid = rs.getBytes("uuid");
+                String name = rs.getString("name");
+                int whitelisted = rs.getInt("whitelisted");
+                boolean isIDwhitelisted = whitelisted == 1;
+
+                newPlayers.add(UuidCodec.toPlayer(uuid, name, isIDwhitelisted));
+                diff.row(nameKey(name), true);
+            }
+        }
+
+        // The new index replaces the old one as a whole, the diff only counts what changed.
+        SyncResult result = diff.apply(name -> { }, name -> { });
+        WhitelistCache.replace(newPlayers);
+        changeLog.reset(revision);
+        return result;
+    }
+
+    // Start from the leader's snapshot instead of reading the whole table. Returns null if there is none yet.
+    private SyncResult copySharedSnapshotToLocal(Connection conn) throws SQLException {
+        long startTime = System.currentTimeMillis();
+        List<WhitelistedPlayer> players = syncLeader.loadSnapshot(conn);
+        if (players == null) {
+            return null;
+        }
+        long readMillis = System.currentTimeMillis() - startTime;
+
+        WhitelistCache.replace(players);
+        long applyMillis = System.currentTimeMillis() - startTime - readMillis;
+
+        // The snapshot may be older than the last change, read the rest of the change log right away
+        changeLog.reset(syncLeader.getSnapshotRevision());
+        SyncResult changes = copyWhitelistChangesToLocal(conn);
+        return new SyncResult(true, players.size() + changes.getRowsRead(), players.size() + changes.getAdded(), changes.getRemoved(),
+                readMillis + changes.getReadMillis(), applyMillis + changes.getApplyMillis());
+    }
+
+    private static String nameKey(String name) {
+        return name == null ? null : WhitelistIndex.normalize(name);
+    }
+
+    // Apply only the change log entries written since the last sync. When nothing changed this is one empty range read on the primary key.
+    private SyncResult copyWhitelistChangesToLocal(Connection conn) throws SQLException {
+        long startTime = System.currentTimeMillis();
+        ArrayList<WhitelistChange> changes = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT revision, uuid, name, whitelisted, removed FROM " + databaseName + ".whitelist_changes WHERE revision > ? ORDER BY revision")) {
+            stmt.setLong(1, changeLog.queryFrom());
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    long revision = rs.getLong("revision");
+                    if (changeLog.accept(revision)) {
+                        changes.add(new WhitelistChange(revision, UuidCodec.toString(rs.getBytes("uuid")), rs.getString("name"),
+                                rs.getInt("whitelisted") == 1, rs.getInt("removed") == 1));
+                    }
+                }
+            }
+        }
+        changeLog.endPoll();
+        long readMillis = System.currentTimeMillis() - startTime;
+
+        // The index applies the changes in one pass, see WhitelistIndex.applyChanges.
+        int removed = 0;
+        for (WhitelistChange change : changes) {
+            if (change.isRemoved()) {
+                removed++;
+            }
+        }
+        WhitelistCache.applyChanges(changes);
+        return new SyncResult(false, changes.size(), changes.size() - removed, removed, readMillis,
+                System.currentTimeMillis() - startTime - readMillis);
+    }
+
+    // Bind a change log row. Must run in the same transaction as the whitelist write it describes.
+    private static void setChange(PreparedStatement stmt, byte[] uuid, String name, boolean isIDWhitelisted, boolean removed) throws SQLException {
+        stmt.setBytes(1, uuid);
+        stmt.setString(2, name);
+        stmt.setInt(3, isIDWhitelisted ? 1 : 0);
+        stmt.setInt(4, removed ? 1 : 0);
+    }
+
+    private void recordChange(Connection conn, byte[] uuid, String name, boolean isIDWhitelisted, boolean removed) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_CHANGE_SQL)) {
+            setChange(stmt, uuid, name, isIDWhitelisted, removed);
+            stmt.executeUpdate();
+        }
+    }
+
+
+    @Override
+    public boolean addWhitelistPlayer(UUID uuid, String name) {
+        try (Connection conn = getConnection()) {
+            long startTime = System.nanoTime();
+
+            conn.setAutoCommit(false);
+
+            String sql = "REPLACE INTO " + databaseName + ".whitelist(uuid, name, whitelisted) VALUES (?, ?, false)";
+            byte[] uuidBytes = UuidCodec.toBytes(uuid);
+            PreparedStatement stmt = conn.prepareStatement(sql);
+            stmt.setBytes(1, uuidBytes);
+            stmt.setString(2, name);
+            stmt.executeUpdate();
+            recordChange(conn, uuidBytes, name, false, false);
+            conn.commit();
+            WhitelistChange change = new WhitelistChange(-1, uuid.toString(), name, false, false);
+            WhitelistCache.applyChanges(Collections.singletonList(change));
+            WhitelistSync2.changeNotifier.publishChange(change);
+
+            ADD_TIME.recordSince(startTime);
+            stmt.close();
+            return true;
+
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.severe("Error adding " + name + " to whitelist database!");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean updateWhitelistPlayerToID(String name, String uuid) {
+        try (Connection conn = getConnection()) {
+            long startTime = System.nanoTime();
+
+            conn.setAutoCommit(false);
+
+            byte[] uuidBytes = UuidCodec.toBytes(uuid);
+
+            // The UUID is the primary key, so an older row for the same player under another name has to go first
+            try (PreparedStatement staleStmt = conn.prepareStatement(DELETE_STALE_UUID_SQL)) {
+                staleStmt.setBytes(1, uuidBytes);
+                staleStmt.setString(2, name);
+                staleStmt.executeUpdate();
+            }
+
+            String sql = "UPDATE " + databaseName + ".whitelist SET uuid = ?, whitelisted = 1 WHERE name = ?";
+            PreparedStatement stmt = conn.prepareStatement(sql);
+            stmt.setBytes(1, uuidBytes);
+            stmt.setString(2, name);
+            stmt.execute();
+            recordChange(conn, uuidBytes, name, true, false);
+            conn.commit();
+            WhitelistSync2.changeNotifier.publishChange(new WhitelistChange(-1, uuid, name, true, false));
+            BIND_TIME.recordSince(startTime);
+            stmt.close();
+            return true;
+
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.severe("Error adding " + uuid + " to whitelist database!");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean updateWhitelistPlayerName(String name, String uuid) {
+        try (Connection conn = getConnection()) {
+            long startTime = System.nanoTime();
+
+            conn.setAutoCommit(false);
+
+            byte[] uuidBytes = UuidCodec.toBytes(uuid);
+            String sql = "UPDATE " + databaseName + ".whitelist SET name = ? WHERE uuid = ?";
+            PreparedStatement stmt = conn.prepareStatement(sql);
+            stmt.setString(1, name);
+            stmt.setBytes(2, uuidBytes);
+            stmt.execute();
+            recordChange(conn, uuidBytes, name, true, false);
+            conn.commit();
+            WhitelistSync2.changeNotifier.publishChange(new WhitelistChange(-1, uuid, name, true, false));
+            RENAME_TIME.recordSince(startTime);
+            stmt.close();
+            return true;
+
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.severe("Error adding " + uuid + " to whitelist database!");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+
+    @Override
+    public boolean flushPlayerUpdates(List<PendingPlayerUpdate> updates) {
+        try (Connection conn = getConnection()) {
+            long startTime = System.nanoTime();
+
+            conn.setAutoCommit(false);
+
+            List<WhitelistChange> changes = new ArrayList<>();
+            try (PreparedStatement staleStmt = conn.prepareStatement(DELETE_STALE_UUID_SQL);
+                 PreparedStatement bindStmt = conn.prepareStatement("UPDATE " + databaseName + ".whitelist SET uuid = ?, whitelisted = 1 WHERE name = ?");
+                 PreparedStatement renameStmt = conn.prepareStatement("UPDATE " + databaseName + ".whitelist SET name = ? WHERE uuid = ?");
+                 PreparedStatement changeStmt = conn.prepareStatement(INSERT_CHANGE_SQL)) {
+
+                // Binds run before renames, which matches the order they happen in for a single player.
+                for (PendingPlayerUpdate update : updates) {
+                    byte[] uuid = UuidCodec.toBytes(update.getUuid());
+                    if (update.getBindName() != null) {
+                        staleStmt.setBytes(1, uuid);
+                        staleStmt.setString(2, update.getBindName());
+                        staleStmt.addBatch();
+                        bindStmt.setBytes(1, uuid);
+                        bindStmt.setString(2, update.getBindName());
+                        bindStmt.addBatch();
+                        changes.add(new WhitelistChange(-1, update.getUuid(), update.getBindName(), true, false));
+                    }
+
+                    if (update.getNewName() != null) {
+                        renameStmt.setString(1, update.getNewName());
+                        renameStmt.setBytes(2, uuid);
+                        renameStmt.addBatch();
+                        changes.add(new WhitelistChange(-1, update.getUuid(), update.getNewName(), true, false));
+                    }
+                }
+
+                for (WhitelistChange change : changes) {
+                    setChange(changeStmt, UuidCodec.toBytes(change.getUuid()), change.getName(), true, false);
+                    changeStmt.addBatch();
+                }
+
+                staleStmt.executeBatch();
+                bindStmt.executeBatch();
+                renameStmt.executeBatch();
+                changeStmt.executeBatch();
+            }
+            conn.commit();
+
+            for (WhitelistChange change : changes) {
+                WhitelistSync2.changeNotifier.publishChange(change);
+            }
+
+            FLUSH_TIME.recordSince(startTime);
+            return true;
+
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.severe("Error writing " + updates.size() + " queued player updates to whitelist database!");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+
+    @Override
+    public boolean removeWhitelistPlayer(UUID uuid, String name) {
+        try (Connection conn = getConnection()) {
+            long startTime = System.nanoTime();
+
+            conn.setAutoCommit(false);
+
+            String sql = "DELETE FROM " + databaseName + ".whitelist WHERE name = ?";
+            PreparedStatement stmt = conn.prepareStatement(sql);
+            stmt.setString(1, name);
+            stmt.executeUpdate();
+            recordChange(conn, UuidCodec.toBytes(uuid), name, false, true);
+            conn.commit();
+            WhitelistCache.removeByName(name);
+            WhitelistSync2.changeNotifier.publishChange(new WhitelistChange(-1, uuid.toString(), name, false, true));
+
+            REMOVE_TIME.recordSince(startTime);
+            stmt.close();
+            return true;
+
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.severe("Error removing " + name + " to whitelist database!");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean supportsOps() {
+        return ops != null;
+    }
+
+    @Override
+    public ArrayList<OppedPlayer> getOppedPlayersFromDatabase() {
+        return ops != null ? ops.getOppedPlayersFromDatabase() : new ArrayList<>();
+    }
+
+    @Override
+    public boolean copyLocalOppedPlayersToDatabase(Consumer<String> progressOutput) {
+        return ops != null && ops.copyLocalOppedPlayersToDatabase(progressOutput);
+    }
+
+    @Override
+    public boolean copyDatabaseOppedPlayersToLocal(Server server) {
+        return ops != null && ops.copyDatabaseOppedPlayersToLocal();
+    }
+
+    @Override
+    public SyncResult getLastOpSyncResult() {
+        return ops != null ? ops.getLastSyncResult() : null;
+    }
+
+    @Override
+    public boolean addOppedPlayer(OfflinePlayer player) {
+        return ops != null && ops.addOppedPlayer(player);
+    }
+
+    @Override
+    public boolean removeOppedPlayer(OfflinePlayer player) {
+        return ops != null && ops.removeOppedPlayer(player);
+    }
+}
@@ -0,0 +1,242 @@
+package pw.twpi.whitelistsync2.service;
+
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.json.OppedPlayersFileUtilities;
+import pw.twpi.whitelistsync2.metrics.Histogram;
+import pw.twpi.whitelistsync2.metrics.Metrics;
+import pw.twpi.whitelistsync2.models.OppedPlayer;
+import pw.twpi.whitelistsync2.models.SyncResult;
+import org.bukkit.OfflinePlayer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Syncs the op list through the op table and its op_changes log, the same way the SQL backends sync the whitelist:
+ * pushes are batched, syncs after the first only read the change log, and changes are applied to the server by
+ * {@link LocalOpApplier}. Both tables are created by the backend, as their column types differ between databases.
+ */
+public class OpListSync {
+
+    private static final Histogram PULL_TIME = Metrics.operation("pull_ops");
+    private static final Histogram PUSH_TIME = Metrics.operation("push_local_ops");
+    private static final Histogram OP_TIME = Metrics.operation("op");
+    private static final Histogram DEOP_TIME = Metrics.operation("deop");
+
+    private final ConnectionPool pool;
+    private final String opTable;
+    private final String changesTable;
+    private final String upsertSql;
+    private final String insertChangeSql;
+    private final int batchSize;
+    private final ChangeLogCursor changeLog = new ChangeLogCursor();
+    private volatile SyncResult lastSyncResult;
+
+    /**
+     * @param tablePrefix put in front of the table names, e.g. the MySQL database name and a dot
+     * @param replace statement that inserts or replaces a row, "REPLACE" or "INSERT OR REPLACE"
+     */
+    public OpListSync(ConnectionPool pool, String tablePrefix, String replace) {
+        this.pool = pool;
+        this.opTable = tablePrefix + "op";
+        this.changesTable = tablePrefix + "op_changes";
+        this.upsertSql = replace + " INTO " + opTable + "(uuid, name, isOp) VALUES (?, ?, ?)";
+        this.insertChangeSql = "INSERT INTO " + changesTable + "(uuid, name, isOp) VALUES (?, ?, ?)";
+        this.batchSize = Math.max(1, WhitelistSync2.CONFIG.getInt("general.batch-size", 1000));
+    }
+
+    public ArrayList<OppedPlayer> getOppedPlayersFromDatabase() {
+        ArrayList<OppedPlayer> oppedPlayers = new ArrayList<>();
+
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT uuid, name FROM " + opTable + " WHERE isOp = 1;");
+             ResultSet rs = stmt.executeQuery()) {
+            long startTime = System.nanoTime();
+
+            while (rs.next()) {
+                oppedPlayers.add(new OppedPlayer(rs.getString("uuid"), rs.getString("name"), true));
+            }
+
+            PULL_TIME.recordSince(startTime);
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.severe("Error querying opped players from database!");
+            e.printStackTrace();
+        }
+
+        return oppedPlayers;
+    }
+
+    public boolean copyLocalOppedPlayersToDatabase(Consumer<String> progressOutput) {
+        BatchProgress progress = new BatchProgress(progressOutput, 0);
+
+        // Keep track of records. [0] is the total written, [1] the rows in the current batch.
+        int[] records = {0, 0};
+        try (Connection conn = pool.getConnection()) {
+            long startTime = System.nanoTime();
+
+            // Each batch is committed on its own. Anything uncommitted is rolled back when the connection returns to the pool.
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement stmt = conn.prepareStatement(upsertSql);
+                 PreparedStatement changeStmt = conn.prepareStatement(insertChangeSql)) {
+                boolean complete = OppedPlayersFileUtilities.forEachOppedPlayer(player -> {
+                    if (player.getUuid() != null && player.getName() != null) {
+                        setRow(stmt, player.getUuid(), player.getName(), true);
+                        stmt.addBatch();
+                        setRow(changeStmt, player.getUuid(), player.getName(), true);
+                        changeStmt.addBatch();
+
+                        records[0]++;
+                        records[1]++;
+                    }
+
+                    if (records[1] >= batchSize) {
+                        stmt.executeBatch();
+                        changeStmt.executeBatch();
+                        conn.commit();
+                        records[1] = 0;
+                        progress.update(records[0]);
+                    }
+                });
+
+                if (records[1] > 0) {
+                    stmt.executeBatch();
+                    changeStmt.executeBatch();
+                    conn.commit();
+                }
+
+                if (!complete) {
+                    WhitelistSync2.LOGGER.severe("Could not read all of ops.json, pushed " + records[0] + " players before the error.");
+                    progressOutput.accept("Could not read all of ops.json, pushed " + records[0] + " players before the error.");
+                    WhitelistSync2.changeNotifier.publishResync();
+                    return false;
+                }
+            }
+            PUSH_TIME.recordSince(startTime);
+            progress.finish(records[0]);
+            WhitelistSync2.changeNotifier.publishResync();
+
+            return true;
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.severe("Failed to update op database with local records.");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    public boolean copyDatabaseOppedPlayersToLocal() {
+        try (Connection conn = pool.getConnection()) {
+            SyncResult result;
+
+            if (changeLog.needsFullSync()) {
+                // Read the revision first. Changes committed while the table is read are applied again by the next delta, which is harmless.
+                long revision;
+                try (PreparedStatement stmt = conn.prepareStatement("SELECT COALESCE(MAX(revision), 0) AS revision FROM " + changesTable + ";");
+                     ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    revision = rs.getLong("revision");
+                }
+
+                // Ops without a row are left alone, so a server's own ops survive until they are pushed or deopped.
+                WhitelistDiff<String> diff = new WhitelistDiff<>(OppedPlayersFileUtilities.getOppedPlayers(), OppedPlayer::getUuid, true, false);
+                try (PreparedStatement stmt = conn.prepareStatement("SELECT uuid, isOp FROM " + opTable + ";");
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        diff.row(rs.getString("uuid"), rs.getInt("isOp") == 1);
+                    }
+                }
+
+                result = diff.apply(WhitelistSync2.opApplier::op, WhitelistSync2.opApplier::deop);
+                changeLog.reset(revision);
+            } else {
+                // Only rows written since the last sync. ops.json is only read when one of them needs applying.
+                long startTime = System.currentTimeMillis();
+                ArrayList<OppedPlayer> changes = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement("SELECT revision, uuid, isOp FROM " + changesTable + " WHERE revision > ? ORDER BY revision;")) {
+                    stmt.setLong(1, changeLog.queryFrom());
+
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            if (changeLog.accept(rs.getLong("revision"))) {
+                                changes.add(new OppedPlayer(rs.getString("uuid"), null, rs.getInt("isOp") == 1));
+                            }
+                        }
+                    }
+                }
+                changeLog.endPoll();
+
+                if (changes.isEmpty()) {
+                    result = new SyncResult(false, 0, 0, 0, System.currentTimeMillis() - startTime, 0);
+                } else {
+                    WhitelistDiff<String> diff = new WhitelistDiff<>(OppedPlayersFileUtilities.getOppedPlayers(), OppedPlayer::getUuid, false, false);
+                    for (OppedPlayer change : changes) {
+                        diff.row(change.getUuid(), change.isOp());
+                    }
+                    result = diff.apply(WhitelistSync2.opApplier::op, WhitelistSync2.opApplier::deop);
+                }
+            }
+
+            lastSyncResult = result;
+            if (result.getChanged() > 0) {
+                WhitelistSync2.LOGGER.fine("Ops: " + result);
+            }
+
+            return true;
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.severe("Error querying opped players from database!");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    public SyncResult getLastSyncResult() {
+        return lastSyncResult;
+    }
+
+    public boolean addOppedPlayer(OfflinePlayer player) {
+        return write(player, true, OP_TIME);
+    }
+
+    public boolean removeOppedPlayer(OfflinePlayer player) {
+        return write(player, false, DEOP_TIME);
+    }
+
+    // Write the op row and its change log row in one transaction, then have the other servers sync.
+    private boolean write(OfflinePlayer player, boolean op, Histogram timer) {
+        try (Connection conn = pool.getConnection()) {
+            long startTime = System.nanoTime();
+
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement stmt = conn.prepareStatement(upsertSql);
+                 PreparedStatement changeStmt = conn.prepareStatement(insertChangeSql)) {
+                setRow(stmt, player.getUniqueId().toString(), player.getName(), op);
+                stmt.executeUpdate();
+                setRow(changeStmt, player.getUniqueId().toString(), player.getName(), op);
+                changeStmt.executeUpdate();
+            }
+            conn.commit();
+            WhitelistSync2.changeNotifier.publishResync();
+
+            timer.recordSince(startTime);
+            return true;
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.severe("Error " + (op ? "opping " : "deopping ") + player.getName() + " in the op database!");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    private static void setRow(PreparedStatement stmt, String uuid, String name, boolean op) throws SQLException {
+        stmt.setString(1, uuid);
+        stmt.setString(2, name);
+        stmt.setInt(3, op ? 1 : 0);
+    }
+}
@@ -0,0 +1,363 @@
+package pw.twpi.whitelistsync2.service;
+
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.models.WhitelistChange;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Brings a backend's tables up to date through numbered migrations, recorded in the schema_version table.
+ * Every migration runs once per database, in order. The server that runs one first claims its row, so servers
+ * started together do not run it twice; the others wait for it to finish.
+ *
+ * Tables are first created as they were before migrations existed, so every database starts from the same schema.
+ */
+public class SchemaMigrator {
+
+    // Time a server waits for a migration another server claimed
+    private static final long WAIT_MILLIS = 10 * 60 * 1000;
+
+    @FunctionalInterface
+    public interface Migration {
+        void migrate(Connection conn) throws SQLException;
+    }
+
+    // Binds one selected row to the insert statement, for copies that convert rows. Returns false to leave the row out.
+    @FunctionalInterface
+    public interface RowCopier {
+        boolean copy(ResultSet row, PreparedStatement insert) throws SQLException;
+    }
+
+    private static final class Step {
+        private final String description;
+        private final Migration migration;
+
+        private Step(String description, Migration migration) {
+            this.description = description;
+            this.migration = migration;
+        }
+    }
+
+    private final ConnectionPool pool;
+    private final String table;
+    private final TreeMap<Integer, Step> steps = new TreeMap<>();
+
+    /**
+     * @param tablePrefix put in front of the table name, e.g. the MySQL database name and a dot
+     */
+    public SchemaMigrator(ConnectionPool pool, String tablePrefix) {
+        this.pool = pool;
+        this.table = tablePrefix + "schema_version";
+    }
+
+    public SchemaMigrator add(int version, String description, Migration migration) {
+        steps.put(version, new Step(description, migration));
+        return this;
+    }
+
+    /**
+     * Run every migration the database has not seen yet.
+     * @return false if one failed or another server's did not finish in time. Later migrations are not run then.
+     */
+    public boolean migrate() {
+        try (Connection conn = pool.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS " + table + " ("
+                        + "version INTEGER NOT NULL PRIMARY KEY,"
+                        + "description VARCHAR(200) NOT NULL,"
+                        + "applied_at BIGINT NOT NULL)");
+            }
+
+            // A newer version of the plugin changed the tables in ways this one would write wrong
+            int newest = steps.isEmpty() ? 0 : steps.lastKey();
+            int live = readNewestVersion(conn);
+            if (live > newest) {
+                WhitelistSync2.LOGGER.severe("The database schema is at version " + live + ", but this version of the plugin only knows up to "
+                        + newest + ". Update the plugin on this server before starting it.");
+                return false;
+            }
+
+            for (Map.Entry<Integer, Step> entry : steps.entrySet()) {
+                int version = entry.getKey();
+                Step step = entry.getValue();
+
+                if (!claim(conn, version, step.description)) {
+                    if (!waitForOtherServer(conn, version)) {
+                        return false;
+                    }
+                    continue;
+                }
+
+                WhitelistSync2.LOGGER.info("Migrating database schema to version " + version + ": " + step.description + "...");
+                long startTime = System.currentTimeMillis();
+                try {
+                    step.migration.migrate(conn);
+                    if (!conn.getAutoCommit()) {
+                        conn.commit();
+                        conn.setAutoCommit(true);
+                    }
+                } catch (SQLException e) {
+                    WhitelistSync2.LOGGER.severe("Database schema migration " + version + " failed!");
+                    e.printStackTrace();
+                    if (!conn.getAutoCommit()) {
+                        conn.rollback();
+                        conn.setAutoCommit(true);
+                    }
+                    // Give up the claim, so the migration runs again on the next start
+                    try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + table + " WHERE version = ? AND applied_at = 0")) {
+                        stmt.setInt(1, version);
+                        stmt.executeUpdate();
+                    }
+                    return false;
+                }
+
+                try (PreparedStatement stmt = conn.prepareStatement("UPDATE " + table + " SET applied_at = ? WHERE version = ?")) {
+                    stmt.setLong(1, System.currentTimeMillis());
+                    stmt.setInt(2, version);
+                    stmt.executeUpdate();
+                }
+                WhitelistSync2.LOGGER.info("Migrated database schema to version " + version + " in " + (System.currentTimeMillis() - startTime) + "ms.");
+            }
+
+            return true;
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.severe("Failed to read the database schema version!");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    // Insert the version's row, still marked as not applied. Fails if another server got there first.
+    private boolean claim(Connection conn, int version, String description) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO " + table + "(version, description, applied_at) VALUES (?, ?, 0)")) {
+            stmt.setInt(1, version);
+            stmt.setString(2, description);
+            stmt.executeUpdate();
+            return true;
+        } catch (SQLIntegrityConstraintViolationException e) {
+            return false;
+        } catch (SQLException e) {
+            // Not every driver uses the subclass for key violations
+            if (readAppliedAt(conn, version) != null) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private boolean waitForOtherServer(Connection conn, int version) throws SQLException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        boolean logged = false;
+
+        while (true) {
+            Long appliedAt = readAppliedAt(conn, version);
+            if (appliedAt == null) {
+                // The other server gave up, try again from the start next time
+                WhitelistSync2.LOGGER.severe("Database schema migration " + version + " failed on another server. Restart to retry it.");
+                return false;
+            }
+            if (appliedAt > 0) {
+                return true;
+            }
+
+            if (System.currentTimeMillis() > deadline) {
+                WhitelistSync2.LOGGER.severe("Database schema migration " + version + " was started by another server and did not finish."
+                        + " If no server is migrating, delete the row with version " + version + " from " + table + " and restart.");
+                return false;
+            }
+            if (!logged) {
+                WhitelistSync2.LOGGER.info("Waiting for another server to finish database schema migration " + version + "...");
+                logged = true;
+            }
+
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    // Claimed versions count too, a server may be migrating to them right now
+    private int readNewestVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM " + table)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private Long readAppliedAt(Connection conn, int version) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT applied_at FROM " + table + " WHERE version = ?")) {
+            stmt.setInt(1, version);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong("applied_at") : null;
+            }
+        }
+    }
+
+    /**
+     * Copy a table into a new one, one batch per transaction, so writers are only held up for a batch at a time.
+     * @param select reads one batch: the first column is the key rows are paged by, and the single parameter is the
+     *               last key of the previous batch, e.g. "SELECT name, uuid FROM t WHERE name > ? ORDER BY name LIMIT 1000"
+     * @param insert writes one row, with a parameter per selected column in the same order
+     * @param firstKey a key sorting before every row
+     * @return the number of rows copied
+     */
+    public static int copyInBatches(Connection conn, String select, String insert, Object firstKey) throws SQLException {
+        return copyInBatches(conn, select, insert, firstKey, SchemaMigrator::copyColumns);
+    }
+
+    /**
+     * Like {@link #copyInBatches(Connection, String, String, Object)}, with rows bound by the copier instead of column by column.
+     * @return the number of rows copied, without the ones the copier left out
+     */
+    public static int copyInBatches(Connection conn, String select, String insert, Object firstKey, RowCopier copier) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+
+        int copied = 0;
+        long lastReport = System.currentTimeMillis();
+        Object lastKey = firstKey;
+        try (PreparedStatement selectStmt = conn.prepareStatement(select);
+             PreparedStatement insertStmt = conn.prepareStatement(insert)) {
+            while (true) {
+                int rows = 0;
+                int batched = 0;
+                selectStmt.setObject(1, lastKey);
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        if (copier.copy(rs, insertStmt)) {
+                            insertStmt.addBatch();
+                            batched++;
+                        }
+                        lastKey = rs.getObject(1);
+                        rows++;
+                    }
+                }
+
+                if (rows == 0) {
+                    break;
+                }
+                if (batched > 0) {
+                    insertStmt.executeBatch();
+                }
+                conn.commit();
+                copied += batched;
+
+                if (System.currentTimeMillis() - lastReport >= 5000) {
+                    lastReport = System.currentTimeMillis();
+                    WhitelistSync2.LOGGER.info("Copied " + copied + " rows...");
+                }
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+
+        return copied;
+    }
+
+    private static boolean copyColumns(ResultSet row, PreparedStatement insert) throws SQLException {
+        int columns = row.getMetaData().getColumnCount();
+        for (int i = 1; i <= columns; i++) {
+            insert.setObject(i, row.getObject(i));
+        }
+        return true;
+    }
+
+    /**
+     * Like {@link #copyChangedRows(Connection, String, long, String, String, String, RowCopier)}, with the selected
+     * columns bound in the same order.
+     */
+    public static long copyChangedRows(Connection conn, String changesTable, long revision,
+                                       String delete, String select, String insert) throws SQLException {
+        return copyChangedRows(conn, changesTable, revision, delete, select, insert, SchemaMigrator::copyColumns);
+    }
+
+    /**
+     * After a batched copy, copy the players written meanwhile again, by name, which every table version keeps as text.
+     * The new table's rows with the name are deleted and the old table's copied over. A few rounds, as each one is
+     * shorter than the last.
+     * @param delete deletes the new table's rows with the name given as the single parameter
+     * @param select reads the old table's rows with the name given as the single parameter
+     * @return the change log revision the new table is caught up to
+     */
+    public static long copyChangedRows(Connection conn, String changesTable, long revision,
+                                       String delete, String select, String insert, RowCopier copier) throws SQLException {
+        for (int round = 0; round < 5; round++) {
+            List<WhitelistChange> written = changesSince(conn, changesTable, revision);
+            if (written.isEmpty()) {
+                break;
+            }
+
+            List<String> names = new ArrayList<>(written.size());
+            for (WhitelistChange change : written) {
+                names.add(change.getName());
+            }
+            copyRowsByName(conn, names, delete, select, insert, copier);
+            revision = written.get(written.size() - 1).getRevision();
+        }
+        return revision;
+    }
+
+    /**
+     * Copy the players with the given names again, in one transaction, with the statements described at
+     * {@link #copyChangedRows(Connection, String, long, String, String, String, RowCopier)}.
+     */
+    public static void copyRowsByName(Connection conn, List<String> names, String delete, String select, String insert,
+                                      RowCopier copier) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        try (PreparedStatement deleteStmt = conn.prepareStatement(delete);
+             PreparedStatement selectStmt = conn.prepareStatement(select);
+             PreparedStatement insertStmt = conn.prepareStatement(insert)) {
+            conn.setAutoCommit(false);
+            for (String name : names) {
+                deleteStmt.setString(1, name);
+                deleteStmt.executeUpdate();
+                selectStmt.setString(1, name);
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        if (copier.copy(rs, insertStmt)) {
+                            insertStmt.executeUpdate();
+                        }
+                    }
+                }
+            }
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    // Players written since a change log revision, oldest first, to copy again after a batched copy.
+    public static List<WhitelistChange> changesSince(Connection conn, String changesTable, long revision) throws SQLException {
+        List<WhitelistChange> changes = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT revision, uuid, name FROM " + changesTable + " WHERE revision > ? ORDER BY revision")) {
+            stmt.setLong(1, revision);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    changes.add(new WhitelistChange(rs.getLong("revision"), rs.getString("uuid"), rs.getString("name"), false, false));
+                }
+            }
+        }
+        return changes;
+    }
+
+    public static long maxRevision(Connection conn, String changesTable) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT COALESCE(MAX(revision), 0) AS revision FROM " + changesTable);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getLong("revision");
+        }
+    }
+}
@@ -0,0 +1,634 @@
+package pw.twpi.whitelistsync2.service;
+
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.json.WhitelistFileCache;
+import pw.twpi.whitelistsync2.json.WhitelistedPlayersFileUtilities;
+import pw.twpi.whitelistsync2.metrics.Histogram;
+import pw.twpi.whitelistsync2.metrics.Metrics;
+import pw.twpi.whitelistsync2.models.OppedPlayer;
+import pw.twpi.whitelistsync2.models.PendingPlayerUpdate;
+import pw.twpi.whitelistsync2.models.SyncResult;
+import pw.twpi.whitelistsync2.models.WhitelistChange;
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+
+import java.io.File;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+public class SqLiteService implements BaseService {
+
+    private static final Histogram PULL_TIME = Metrics.operation("pull_database");
+    private static final Histogram PUSH_TIME = Metrics.operation("push_local");
+    private static final Histogram ADD_TIME = Metrics.operation("add");
+    private static final Histogram REMOVE_TIME = Metrics.operation("remove");
+
+    private final int batchSize = Math.max(1, WhitelistSync2.CONFIG.getInt("general.batch-size", 1000));
+    private final String INSERT_CHANGE_SQL = "INSERT INTO whitelist_changes(uuid, name, whitelisted) VALUES (?, ?, ?)";
+    private final ChangeLogCursor changeLog = new ChangeLogCursor();
+    private ConnectionPool pool;
+    private volatile SyncResult lastSyncResult;
+    // Set up when general.sync-ops is on
+    private OpListSync ops;
+    // Set up when shared-sync.enabled is on
+    private SyncLeader syncLeader;
+
+    private Connection getConnection() throws SQLException {
+        return pool.getConnection();
+    }
+
+    @Override
+    public String getSyncMode() {
+        return "SQLITE";
+    }
+
+    @Override
+    public boolean supportsDelta() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsBatch() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsNotifications() {
+        return true;
+    }
+
+    @Override
+    public ConnectionPool getConnectionPool() {
+        return pool;
+    }
+
+    @Override
+    public void shutdown() {
+        if (syncLeader != null) {
+            syncLeader.release();
+        }
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    // Function used to initialize the database file
+    @Override
+    public boolean initializeDatabase() {
+        WhitelistSync2.LOGGER.info("Setting up the SQLite service...");
+        File databaseFile = new File(WhitelistSync2.CONFIG.getString("sqlite.database-path"));
+        boolean isSuccess = true;
+
+        try {
+            Class.forName("org.sqlite.JDBC").newInstance();
+        } catch (Exception e) {
+            WhitelistSync2.LOGGER.severe("Failed to init sqlite connector. Is the library missing?");
+            e.printStackTrace();
+            isSuccess = false;
+        }
+
+        if (isSuccess) {
+            pool = new ConnectionPool("SQLite", "jdbc:sqlite:" + WhitelistSync2.CONFIG.getString("sqlite.database-path"), new Properties());
+        }
+
+        // If database does not exist, create a new one
+        if (!databaseFile.exists() && isSuccess) {
+            try (Connection conn = getConnection()) {
+                WhitelistSync2.LOGGER.info("A new database \"" + WhitelistSync2.CONFIG.getString("sqlite.database-path") + "\" has been created.");
+            } catch (SQLException e) {
+                // Something is wrong...
+                WhitelistSync2.LOGGER.severe("Failed to create new SQLite database file!");
+                e.printStackTrace();
+                isSuccess = false;
+            }
+        }
+
+        // Create whitelist table if it doesn't exist.
+        if (isSuccess) {
+            try (Connection conn = getConnection()) {
+
+                // If the conn is valid, everything below this will run
+                WhitelistSync2.LOGGER.info("Connected to SQLite database successfully!");
+
+                // SQL statement for creating a new table
+                String sql = "CREATE TABLE IF NOT EXISTS whitelist (\n"
+                        + "	uuid text NOT NULL PRIMARY KEY,\n"
+                        + "	name text,\n"
+                        + " whitelisted integer NOT NULL);";
+                Statement stmt = conn.createStatement();
+                stmt.execute(sql);
+                stmt.close();
+
+                // Change log read by delta syncs. AUTOINCREMENT keeps revisions from being reused.
+                sql = "CREATE TABLE IF NOT EXISTS whitelist_changes (\n"
+                        + "	revision integer PRIMARY KEY AUTOINCREMENT,\n"
+                        + "	uuid text NOT NULL,\n"
+                        + "	name text,\n"
+                        + "	whitelisted integer NOT NULL,\n"
+                        + " removed integer NOT NULL DEFAULT 0);";
+                Statement stmtChanges = conn.createStatement();
+                stmtChanges.execute(sql);
+                stmtChanges.close();
+
+                // Single row shared by all servers when one of them syncs for the others
+                if (WhitelistSync2.CONFIG.getBoolean("shared-sync.enabled")) {
+                    sql = "CREATE TABLE IF NOT EXISTS sync_state (\n"
+                            + "	id integer NOT NULL PRIMARY KEY,\n"
+                            + "	holder text,\n"
+                            + "	lease_expires integer NOT NULL DEFAULT 0,\n"
+                            + "	version integer NOT NULL DEFAULT 0,\n"
+                            + "	snapshot_revision integer NOT NULL DEFAULT 0,\n"
+                            + " snapshot blob);";
+                    Statement stmtState = conn.createStatement();
+                    stmtState.execute(sql);
+                    stmtState.execute("INSERT OR IGNORE INTO sync_state(id) VALUES (1);");
+                    stmtState.close();
+
+                    syncLeader = new SyncLeader(pool, "");
+                }
+
+                // Op tables are also created while op syncing is off, so migrations always find them.
+                sql = "CREATE TABLE IF NOT EXISTS op (\n"
+                        + "	uuid text NOT NULL PRIMARY KEY,\n"
+                        + "	name text,\n"
+                        + " isOp integer NOT NULL);";
+                Statement stmt2 = conn.createStatement();
+                stmt2.execute(sql);
+                stmt2.close();
+
+                // Op change log read by delta syncs
+                sql = "CREATE TABLE IF NOT EXISTS op_changes (\n"
+                        + "	revision integer PRIMARY KEY AUTOINCREMENT,\n"
+                        + "	uuid text NOT NULL,\n"
+                        + "	name text,\n"
+                        + " isOp integer NOT NULL);";
+                Statement stmtOpChanges = conn.createStatement();
+                stmtOpChanges.execute(sql);
+                stmtOpChanges.close();
+
+                if (WhitelistSync2.CONFIG.getBoolean("general.sync-ops")) {
+                    ops = new OpListSync(pool, "", "INSERT OR REPLACE");
+                }
+
+            } catch (SQLException e) {
+                // Something is wrong...
+                WhitelistSync2.LOGGER.severe("Error creating op or whitelist table!\n" + e.getMessage());
+                e.printStackTrace();
+                isSuccess = false;
+            }
+        }
+
+        if (isSuccess) {
+            // The whitelist is keyed by UUID already. Names are not kept current in SQLite mode, e.g. after a
+            // rename, so two rows can share one and the name index cannot be unique.
+            isSuccess = new SchemaMigrator(pool, "")
+                    .add(1, "Index whitelist names", conn -> {
+                        try (Statement stmt = conn.createStatement()) {
+                            stmt.execute("CREATE INDEX IF NOT EXISTS whitelist_name ON whitelist(name COLLATE NOCASE);");
+                        }
+                    })
+                    .add(2, "Store whitelist UUIDs as 16 bytes", this::storeUuidsAsBinary)
+                    .migrate();
+        }
+
+        return isSuccess;
+    }
+
+    /**
+     * UUIDs were stored as 36 character strings. Rebuild the whitelist with 16 byte blob UUIDs, copied in batches,
+     * and replace the change log with an empty one continuing its revisions. Every server starts with a full sync,
+     * so the change log history is not needed. SQLite changes schemas in transactions, so the swap is one step.
+     */
+    private void storeUuidsAsBinary(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS whitelist_migrating;");
+            stmt.execute("CREATE TABLE whitelist_migrating (\n"
+                    + "	uuid blob NOT NULL PRIMARY KEY,\n"
+                    + "	name text,\n"
+                    + " whitelisted integer NOT NULL);");
+        }
+
+        String insert = "INSERT OR REPLACE INTO whitelist_migrating(uuid, name, whitelisted) VALUES (?, ?, ?)";
+        long revision = SchemaMigrator.maxRevision(conn, "whitelist_changes");
+        int copied = SchemaMigrator.copyInBatches(conn,
+                "SELECT uuid, name, whitelisted FROM whitelist WHERE uuid > ? ORDER BY uuid LIMIT " + batchSize,
+                insert, "", SqLiteService::copyBinaryUuidRow);
+        SchemaMigrator.copyChangedRows(conn, "whitelist_changes", revision,
+                "DELETE FROM whitelist_migrating WHERE name = ?",
+                "SELECT uuid, name, whitelisted FROM whitelist WHERE name = ?",
+                insert, SqLiteService::copyBinaryUuidRow);
+
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP INDEX IF EXISTS whitelist_name;");
+            stmt.execute("DROP TABLE whitelist;");
+            stmt.execute("ALTER TABLE whitelist_migrating RENAME TO whitelist;");
+            stmt.execute("CREATE INDEX whitelist_name ON whitelist(name COLLATE NOCASE);");
+
+            long lastRevision = SchemaMigrator.maxRevision(conn, "whitelist_changes");
+            stmt.execute("DROP TABLE whitelist_changes;");
+            stmt.execute("CREATE TABLE whitelist_changes (\n"
+                    + "	revision integer PRIMARY KEY AUTOINCREMENT,\n"
+                    + "	uuid blob NOT NULL,\n"
+                    + "	name text,\n"
+                    + "	whitelisted integer NOT NULL,\n"
+                    + " removed integer NOT NULL DEFAULT 0);");
+            // New revisions continue after the old ones, which a shared snapshot may still refer to
+            if (lastRevision > 0) {
+                try (PreparedStatement sequence = conn.prepareStatement("INSERT INTO sqlite_sequence(name, seq) VALUES ('whitelist_changes', ?);")) {
+                    sequence.setLong(1, lastRevision);
+                    sequence.executeUpdate();
+                }
+            }
+        }
+        conn.commit();
+        conn.setAutoCommit(true);
+
+        WhitelistSync2.LOGGER.info("Copied " + copied + " whitelist rows to the new table.");
+    }
+
+    // Text UUID row to binary. Rows with a malformed UUID cannot be keyed and are left out.
+    private static boolean copyBinaryUuidRow(ResultSet row, PreparedStatement insert) throws SQLException {
+        byte[] uuid = UuidCodec.parse(row.getString("uuid"));
+        if (uuid == null) {
+            WhitelistSync2.LOGGER.warning("Dropped whitelist row of " + row.getString("name") + ", its UUID \"" + row.getString("uuid") + "\" is malformed.");
+            return false;
+        }
+        insert.setBytes(1, uuid);
+        insert.setString(2, row.getString("name"));
+        insert.setInt(3, row.getInt("whitelisted"));
+        return true;
+    }
+
+    @Override
+    public ArrayList<WhitelistedPlayer> getWhitelistedPlayersFromDatabase() {
+        // ArrayList for whitelisted players.
+        ArrayList<WhitelistedPlayer> whitelistedPlayers = new ArrayList<>();
+
+        try (Connection conn = getConnection()) {
+            // Keep track of records.
+            int records = 0;
+
+            long startTime = System.nanoTime();
+
+            String sql = "SELECT uuid, name, whitelisted FROM whitelist WHERE whitelisted = 1;";
+            PreparedStatement stmt = conn.prepareStatement(sql);
+            ResultSet rs = stmt.executeQuery();
+
+            // Save queried return to names list.
+            while (rs.next()) {
+                whitelistedPlayers.add(UuidCodec.toPlayer(rs.getBytes("uuid"), rs.getString("name"), true));
+                records++;
+            }
+
+            PULL_TIME.recordSince(startTime);
+
+            stmt.close();
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.severe("Error querying whitelisted players from database!");
+            e.printStackTrace();
+        }
+
+        return whitelistedPlayers;
+    }
+
+    @Override
+    public ArrayList<WhitelistedPlayer> getWhitelistedPlayersFromLocal() {
+        return new ArrayList<>(WhitelistFileCache.getPlayers());
+    }
+
+    @Override
+    public boolean copyLocalWhitelistedPlayersToDatabase(Consumer<String> progressOutput) {
+        // whitelist.json is streamed straight into the batches, so the list size is not known up front.
+        BatchProgress progress = new BatchProgress(progressOutput, 0);
+
+        // Keep track of records. [0] is the total written, [1] the rows in the current batch.
+        int[] records = {0, 0};
+        try (Connection conn = getConnection()) {
+            long startTime = System.nanoTime();
+
+            // Each batch is committed on its own. Anything uncommitted is rolled back when the connection returns to the pool.
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT OR REPLACE INTO whitelist(uuid, name, whitelisted) VALUES (?, ?, 1)");
+                 PreparedStatement changeStmt = conn.prepareStatement(INSERT_CHANGE_SQL)) {
+                // Read local whitelist and insert into database.
+                boolean complete = WhitelistedPlayersFileUtilities.forEachWhitelistedPlayer(player -> {
+
+                    if (player.hasUuid() && player.getName() != null) {
+                        byte[] uuid = UuidCodec.toBytes(player.getUuidMost(), player.getUuidLeast());
+                        stmt.setBytes(1, uuid);
+                        stmt.setString(2, player.getName());
+                        stmt.addBatch();
+                        setChange(changeStmt, uuid, player.getName(), 1);
+                        changeStmt.addBatch();
+
+                        records[0]++;
+                        records[1]++;
+                    }
+
+                    if (records[1] >= batchSize) {
+                        stmt.executeBatch();
+                        changeStmt.executeBatch();
+                        conn.commit();
+                        records[1] = 0;
+                        progress.update(records[0]);
+                    }
+                });
+
+                if (records[1] > 0) {
+                    stmt.executeBatch();
+                    changeStmt.executeBatch();
+                    conn.commit();
+                }
+
+                if (!complete) {
+                    // Batches already committed stay in the database; peers pick them up through the change log.
+                    WhitelistSync2.LOGGER.severe("Could not read all of whitelist.json, pushed " + records[0] + " players before the error.");
+                    progressOutput.accept("Could not read all of whitelist.json, pushed " + records[0] + " players before the error.");
+                    WhitelistSync2.changeNotifier.publishResync();
+                    return false;
+                }
+            }
+            PUSH_TIME.recordSince(startTime);
+            progress.finish(records[0]);
+            WhitelistSync2.changeNotifier.publishResync();
+
+            return true;
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.severe("Failed to update database with local records.");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean copyDatabaseWhitelistedPlayersToLocal(Server server) {
+        try (Connection conn = getConnection()) {
+            SyncResult result;
+
+            boolean following = syncLeader != null && !syncLeader.poll(conn);
+
+            if (following && !changeLog.needsFullSync() && !syncLeader.hasNewVersion()) {
+                // The leader has not seen any changes since the last sync, so the change log is not read at all
+                result = new SyncResult(false, 0, 0, 0, 0, 0);
+            } else if (changeLog.needsFullSync()) {
+                result = following ? copySharedSnapshotToLocal(conn) : null;
+                if (result == null) {
+                    result = copyFullWhitelistToLocal(conn);
+                }
+            } else {
+                result = copyWhitelistChangesToLocal(conn);
+            }
+
+            if (following) {
+                syncLeader.markSeen();
+            } else if (syncLeader != null && (result.isFull() || result.getRowsRead() > 0)) {
+                syncLeader.bumpVersion(conn);
+                if (syncLeader.isSnapshotDue(changeLog.queryFrom())) {
+                    syncLeader.publishSnapshot(conn, changeLog.queryFrom(), readWhitelistTable(conn));
+                }
+            }
+
+            lastSyncResult = result;
+            if (result.getChanged() > 0) {
+                WhitelistSync2.LOGGER.fine(result.toString());
+            }
+
+            return true;
+
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.severe("Error querying whitelisted players from database!");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    // Apply the whole table to the server whitelist and remember the change log position it reflects.
+    private SyncResult copyFullWhitelistToLocal(Connection conn) throws SQLException {
+        // Read the revision first. Changes committed while the table is read are applied again by the next delta, which is harmless.
+        long revision;
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT COALESCE(MAX(revision), 0) AS revision FROM whitelist_changes;");
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            revision = rs.getLong("revision");
+        }
+
+        // whitelist.json is only parsed again if it changed since the last sync.
+        // Changes are queued and written to the server whitelist on the main thread.
+        // Keyed on the UUID's two halves, the string form is only built for entries that change.
+        WhitelistDiff<UUID> diff = new WhitelistDiff<>(WhitelistFileCache.getPlayers(), WhitelistedPlayer::getUniqueId, true, false);
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT uuid, whitelisted FROM whitelist;");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                diff.row(UuidCodec.toUuid(rs.getBytes("uuid")), rs.getInt("whitelisted") == 1);
+            }
+        }
+
+        SyncResult result = applyToLocal(diff);
+        changeLog.reset(revision);
+        return result;
+    }
+
+    // Only rows written since the last sync. When nothing changed this is one empty range read on the primary key.
+    private SyncResult copyWhitelistChangesToLocal(Connection conn) throws SQLException {
+        long startTime = System.currentTimeMillis();
+        WhitelistDiff<UUID> diff = null;
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT revision, uuid, whitelisted FROM whitelist_changes WHERE revision > ? ORDER BY revision;")) {
+            stmt.setLong(1, changeLog.queryFrom());
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (changeLog.accept(rs.getLong("revision"))) {
+                        // The server whitelist is only looked at when the database changed.
+                        if (diff == null) {
+                            diff = new WhitelistDiff<>(WhitelistFileCache.getPlayers(), WhitelistedPlayer::getUniqueId, false, false);
+                        }
+                        diff.row(UuidCodec.toUuid(rs.getBytes("uuid")), rs.getInt("whitelisted") == 1);
+                    }
+                }
+            }
+        }
+        changeLog.endPoll();
+
+        if (diff == null) {
+            return new SyncResult(false, 0, 0, 0, System.currentTimeMillis() - startTime, 0);
+        }
+        return applyToLocal(diff);
+    }
+
+    // Start from the leader's snapshot instead of reading the whole table. Returns null if there is none yet.
+    private SyncResult copySharedSnapshotToLocal(Connection conn) throws SQLException {
+        List<WhitelistedPlayer> rows = syncLeader.loadSnapshot(conn);
+        if (rows == null) {
+            return null;
+        }
+
+        WhitelistDiff<UUID> diff = new WhitelistDiff<>(WhitelistFileCache.getPlayers(), WhitelistedPlayer::getUniqueId, true, false);
+        for (WhitelistedPlayer row : rows) {
+            diff.row(row.getUniqueId(), row.isIDWhitelisted());
+        }
+        SyncResult result = applyToLocal(diff);
+
+        // The snapshot may be older than the last change, read the rest of the change log right away
+        changeLog.reset(syncLeader.getSnapshotRevision());
+        SyncResult changes = copyWhitelistChangesToLocal(conn);
+        return new SyncResult(true, result.getRowsRead() + changes.getRowsRead(), result.getAdded() + changes.getAdded(),
+                result.getRemoved() + changes.getRemoved(), result.getReadMillis() + changes.getReadMillis(),
+                result.getApplyMillis() + changes.getApplyMillis());
+    }
+
+    private static SyncResult applyToLocal(WhitelistDiff<UUID> diff) {
+        return diff.apply(uuid -> WhitelistSync2.whitelistApplier.whitelist(uuid.toString()),
+                uuid -> WhitelistSync2.whitelistApplier.unwhitelist(uuid.toString()));
+    }
+
+    // The table as snapshot rows. The whitelisted column is kept in the snapshot's ID whitelisted flag.
+    private static List<WhitelistedPlayer> readWhitelistTable(Connection conn) throws SQLException {
+        List<WhitelistedPlayer> rows = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT uuid, name, whitelisted FROM whitelist;");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                rows.add(UuidCodec.toPlayer(rs.getBytes("uuid"), rs.getString("name"), rs.getInt("whitelisted") == 1));
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public SyncResult getLastSyncResult() {
+        return lastSyncResult;
+    }
+
+    // Bind a change log row. Must run in the same transaction as the whitelist write it describes.
+    private static void setChange(PreparedStatement stmt, byte[] uuid, String name, int whitelisted) throws SQLException {
+        stmt.setBytes(1, uuid);
+        stmt.setString(2, name);
+        stmt.setInt(3, whitelisted);
+    }
+
+    private void recordChange(Connection conn, byte[] uuid, String name, int whitelisted) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_CHANGE_SQL)) {
+            setChange(stmt, uuid, name, whitelisted);
+            stmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public boolean addWhitelistPlayer(UUID uuid, String name) {
+        try (Connection conn = getConnection()) {
+
+            // Start time.
+            long startTime = System.nanoTime();
+
+            conn.setAutoCommit(false);
+
+            String sql = "INSERT OR REPLACE INTO whitelist(uuid, name, whitelisted) VALUES (?, ?, 0)";
+            byte[] uuidBytes = UuidCodec.toBytes(uuid);
+            PreparedStatement stmt = conn.prepareStatement(sql);
+            stmt.setBytes(1, uuidBytes);
+            stmt.setString(2, name);
+            stmt.executeUpdate();
+            recordChange(conn, uuidBytes, name, 0);
+            conn.commit();
+            WhitelistSync2.changeNotifier.publishChange(new WhitelistChange(-1, uuid.toString(), name, false, false));
+
+            ADD_TIME.recordSince(startTime);
+            stmt.close();
+            return true;
+
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.severe("Error adding " + name + " to whitelist database!");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean updateWhitelistPlayerToID(String name, String uuid) {
+        return false;
+    }
+
+    public boolean updateWhitelistPlayerName(String name, String uuid) {
+        return false;
+    }
+
+    // UUID binding and renames are not recorded in SQLite mode, so there is nothing to write.
+    @Override
+    public boolean flushPlayerUpdates(List<PendingPlayerUpdate> updates) {
+        return true;
+    }
+
+    @Override
+    public boolean removeWhitelistPlayer(UUID uuid, String name) {
+        try (Connection conn = getConnection()) {
+
+            // Start time.
+            long startTime = System.nanoTime();
+
+            conn.setAutoCommit(false);
+
+            byte[] uuidBytes = UuidCodec.toBytes(uuid);
+            PreparedStatement stmt = conn.prepareStatement("INSERT OR REPLACE INTO whitelist(uuid, name, whitelisted) VALUES (?, ?, 0)");
+            stmt.setBytes(1, uuidBytes);
+            stmt.setString(2, name);
+            stmt.executeUpdate();
+            recordChange(conn, uuidBytes, name, 0);
+            conn.commit();
+            WhitelistSync2.changeNotifier.publishChange(new WhitelistChange(-1, uuid.toString(), name, false, false));
+
+            REMOVE_TIME.recordSince(startTime);
+            stmt.close();
+            return true;
+
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.severe("Error removing " + name + " to whitelist database!");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean supportsOps() {
+        return ops != null;
+    }
+
+    @Override
+    public ArrayList<OppedPlayer> getOppedPlayersFromDatabase() {
+        return ops != null ? ops.getOppedPlayersFromDatabase() : new ArrayList<>();
+    }
+
+    @Override
+    public boolean copyLocalOppedPlayersToDatabase(Consumer<String> progressOutput) {
+        return ops != null && ops.copyLocalOppedPlayersToDatabase(progressOutput);
+    }
+
+    @Override
+    public boolean copyDatabaseOppedPlayersToLocal(Server server) {
+        return ops != null && ops.copyDatabaseOppedPlayersToLocal();
+    }
+
+    @Override
+    public SyncResult getLastOpSyncResult() {
+        return ops != null ? ops.getLastSyncResult() : null;
+    }
+
+    @Override
+    public boolean addOppedPlayer(OfflinePlayer player) {
+        return ops != null && ops.addOppedPlayer(player);
+    }
+
+    @Override
+    public boolean removeOppedPlayer(OfflinePlayer player) {
+        return ops != null && ops.removeOppedPlayer(player);
+    }
+}
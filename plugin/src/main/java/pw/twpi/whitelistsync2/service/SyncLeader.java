@@ -0,0 +1,233 @@
+package pw.twpi.whitelistsync2.service;
+
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.metrics.Counter;
+import pw.twpi.whitelistsync2.metrics.Metrics;
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Lets one server of the network do the syncing work, coordinated through the single row of the sync_state table.
+ *
+ * The server holding the lease syncs as usual and bumps the version whenever its sync read anything.
+ * Every so often it also uploads a compressed {@link WhitelistSnapshotFile} of the whole whitelist.
+ * The other servers read only the version and lease columns each cycle. They read the change log once the version
+ * moves, and start from the snapshot instead of scanning the whitelist table.
+ * When the lease runs out, e.g. because the leader stopped, the next server to sync takes it over.
+ */
+public class SyncLeader {
+
+    private static final Counter SNAPSHOTS_PUBLISHED = Metrics.counter("shared_snapshots_total", "Shared whitelist snapshots uploaded or loaded.", "action", "published");
+    private static final Counter SNAPSHOTS_LOADED = Metrics.counter("shared_snapshots_total", "Shared whitelist snapshots uploaded or loaded.", "action", "loaded");
+
+    private final ConnectionPool pool;
+    private final String table;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final long leaseMillis;
+    private final long snapshotIntervalMillis;
+
+    // What the last poll read
+    private volatile boolean leader = false;
+    private volatile long version = 0;
+    private long seenVersion = -1;
+    private volatile long snapshotRevision = 0;
+    private long leaseExpires = 0;
+    private long lastSnapshotTime = 0;
+
+    /**
+     * @param tablePrefix put in front of the table name, e.g. the MySQL database name and a dot
+     */
+    public SyncLeader(ConnectionPool pool, String tablePrefix) {
+        this.pool = pool;
+        this.table = tablePrefix + "sync_state";
+        this.leaseMillis = Math.max(1, WhitelistSync2.CONFIG.getLong("shared-sync.lease-time", 90)) * 1000;
+        this.snapshotIntervalMillis = Math.max(0, WhitelistSync2.CONFIG.getLong("shared-sync.snapshot-interval", 300)) * 1000;
+    }
+
+    /**
+     * Read the lease and version, renewing or taking over the lease when due. One primary key read per cycle,
+     * plus an update every half lease while leading.
+     * @return whether this server is the leader for this cycle
+     */
+    public boolean poll(Connection conn) throws SQLException {
+        String holder;
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT holder, lease_expires, version, snapshot_revision FROM " + table + " WHERE id = 1");
+             ResultSet rs = stmt.executeQuery()) {
+            if (!rs.next()) {
+                throw new SQLException(table + " has no row, was the database initialized?");
+            }
+            holder = rs.getString("holder");
+            leaseExpires = rs.getLong("lease_expires");
+            version = rs.getLong("version");
+            snapshotRevision = rs.getLong("snapshot_revision");
+        }
+
+        long now = System.currentTimeMillis();
+        boolean held = nodeId.equals(holder) && leaseExpires > now;
+        if (held && leaseExpires - now > leaseMillis / 2) {
+            setLeader(true);
+            return true;
+        }
+
+        if (!held && leaseExpires > now) {
+            setLeader(false);
+            return false;
+        }
+
+        // Renew our lease, or take over one that ran out. Only one server's update matches.
+        try (PreparedStatement stmt = conn.prepareStatement("UPDATE " + table + " SET holder = ?, lease_expires = ? WHERE id = 1 AND (holder = ? OR lease_expires < ?)")) {
+            stmt.setString(1, nodeId);
+            stmt.setLong(2, now + leaseMillis);
+            stmt.setString(3, nodeId);
+            stmt.setLong(4, now);
+            setLeader(stmt.executeUpdate() == 1);
+        }
+        return leader;
+    }
+
+    // Tell the followers the change log has rows they have not read yet.
+    public void bumpVersion(Connection conn) throws SQLException {
+        if (!leader) {
+            return;
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement("UPDATE " + table + " SET version = version + 1 WHERE id = 1 AND holder = ?")) {
+            stmt.setString(1, nodeId);
+            stmt.executeUpdate();
+        }
+    }
+
+    // Whether the leader found changes since this follower last read the change log.
+    public boolean hasNewVersion() {
+        return version != seenVersion;
+    }
+
+    // Called once the change log was read up to what the last poll's version stands for.
+    public void markSeen() {
+        seenVersion = version;
+    }
+
+    /**
+     * Upload the whole whitelist if the last snapshot is older than shared-sync.snapshot-interval.
+     * @param revision change log revision the players reflect, every change up to it must be included
+     */
+    public void publishSnapshot(Connection conn, long revision, Collection<WhitelistedPlayer> players) throws SQLException {
+        if (!isSnapshotDue(revision)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+
+        byte[] data;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(bytes, 64 * 1024)) {
+                WhitelistSnapshotFile.write(out, players);
+            }
+            data = bytes.toByteArray();
+        } catch (IOException e) {
+            WhitelistSync2.LOGGER.severe("Failed to encode the shared whitelist snapshot!");
+            e.printStackTrace();
+            return;
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement("UPDATE " + table + " SET snapshot = ?, snapshot_revision = ? WHERE id = 1 AND holder = ? AND snapshot_revision < ?")) {
+            stmt.setBytes(1, data);
+            stmt.setLong(2, revision);
+            stmt.setString(3, nodeId);
+            stmt.setLong(4, revision);
+            if (stmt.executeUpdate() == 1) {
+                snapshotRevision = revision;
+                lastSnapshotTime = now;
+                SNAPSHOTS_PUBLISHED.increment();
+                WhitelistSync2.LOGGER.fine("Published a shared snapshot of " + players.size() + " players at revision " + revision
+                        + ", " + data.length + " bytes compressed.");
+            }
+        }
+    }
+
+    // Whether publishSnapshot would upload, so backends can skip reading the players otherwise.
+    public boolean isSnapshotDue(long revision) {
+        return leader && revision > snapshotRevision && System.currentTimeMillis() - lastSnapshotTime >= snapshotIntervalMillis;
+    }
+
+    /**
+     * Download the last snapshot.
+     * @return the players, or null if no snapshot was published yet. {@link #getSnapshotRevision()} is the revision they reflect.
+     */
+    public List<WhitelistedPlayer> loadSnapshot(Connection conn) throws SQLException {
+        byte[] data;
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT snapshot, snapshot_revision FROM " + table + " WHERE id = 1");
+             ResultSet rs = stmt.executeQuery()) {
+            if (!rs.next() || rs.getLong("snapshot_revision") <= 0) {
+                return null;
+            }
+            data = rs.getBytes("snapshot");
+            snapshotRevision = rs.getLong("snapshot_revision");
+        }
+        if (data == null) {
+            return null;
+        }
+
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data), 64 * 1024)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length * 3);
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, read);
+            }
+
+            List<WhitelistedPlayer> players = WhitelistSnapshotFile.read(ByteBuffer.wrap(bytes.toByteArray()), table + ".snapshot");
+            SNAPSHOTS_LOADED.increment();
+            return players;
+        } catch (IOException e) {
+            // Fall back to reading the table, the leader replaces the snapshot later
+            WhitelistSync2.LOGGER.warning("Failed to read the shared whitelist snapshot: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Hand the lease over right away on shutdown, instead of letting it run out.
+    public void release() {
+        if (!leader) {
+            return;
+        }
+
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("UPDATE " + table + " SET lease_expires = 0 WHERE id = 1 AND holder = ?")) {
+            stmt.setString(1, nodeId);
+            stmt.executeUpdate();
+            leader = false;
+        } catch (SQLException e) {
+            WhitelistSync2.LOGGER.warning("Failed to release the sync lease, another server takes over once it runs out.");
+        }
+    }
+
+    public boolean isLeader() {
+        return leader;
+    }
+
+    public long getSnapshotRevision() {
+        return snapshotRevision;
+    }
+
+    private void setLeader(boolean leading) {
+        if (leading != leader) {
+            WhitelistSync2.LOGGER.info(leading ? "This server is now the sync leader." : "Another server is now the sync leader.");
+        }
+        leader = leading;
+    }
+}
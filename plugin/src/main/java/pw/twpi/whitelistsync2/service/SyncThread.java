@@ -0,0 +1,279 @@
+package pw.twpi.whitelistsync2.service;
+
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.metrics.Counter;
+import pw.twpi.whitelistsync2.metrics.Histogram;
+import pw.twpi.whitelistsync2.metrics.Metrics;
+import pw.twpi.whitelistsync2.models.SyncResult;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs syncs with the database on a dedicated scheduler thread. The interval adapts to what the syncs find:
+ * after a sync that changed something the next one runs after sync-scheduler.min-interval, and every sync
+ * that finds nothing doubles the interval up to the backend's sync-time. Failed syncs keep doubling it up to
+ * sync-scheduler.max-backoff. Each interval is jittered, so servers started together do not poll in lockstep.
+ * @author Richard Nader, Jr. <nader1rm@cmich.edu>
+ */
+public class SyncThread {
+
+    private static final Histogram SYNC_TIME = Metrics.histogram("sync_seconds", "Duration of sync cycles with the database.");
+    private static final Counter SYNC_FAILURES = Metrics.counter("sync_failures_total", "Sync cycles that failed.");
+    private static final Counter ROWS_READ = Metrics.counter("sync_rows_total", "Rows read and changed by syncs.", "rows", "read");
+    private static final Counter ROWS_ADDED = Metrics.counter("sync_rows_total", "Rows read and changed by syncs.", "rows", "added");
+    private static final Counter ROWS_REMOVED = Metrics.counter("sync_rows_total", "Rows read and changed by syncs.", "rows", "removed");
+    private static final Histogram OP_SYNC_TIME = Metrics.histogram("op_sync_seconds", "Duration of op list syncs with the database.");
+    private static final Counter OP_SYNC_FAILURES = Metrics.counter("op_sync_failures_total", "Op list syncs that failed.");
+    private static final Counter OP_ROWS_READ = Metrics.counter("op_sync_rows_total", "Rows read and changed by op list syncs.", "rows", "read");
+    private static final Counter OP_ROWS_ADDED = Metrics.counter("op_sync_rows_total", "Rows read and changed by op list syncs.", "rows", "opped");
+    private static final Counter OP_ROWS_REMOVED = Metrics.counter("op_sync_rows_total", "Rows read and changed by op list syncs.", "rows", "deopped");
+
+    // Time allowed for a running sync to finish when the plugin is disabled
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    private final JavaPlugin plugin;
+    private final BaseService service;
+    private final ScheduledExecutorService executor;
+
+    private final long minIntervalMillis;
+    private final long idleIntervalMillis;
+    private final long maxBackoffMillis;
+    private final double jitter;
+
+    // Guarded by this
+    private ScheduledFuture<?> next;
+    // Bumped when a sync is requested, so a cycle scheduled before the request does not run as well
+    private long generation = 0;
+    private boolean running = false;
+    private boolean syncRequested = false;
+    // Completed by the next cycle that starts, with whether it succeeded
+    private List<CompletableFuture<Boolean>> waiting = new ArrayList<>();
+    private volatile long intervalMillis;
+
+    public SyncThread(JavaPlugin plugin, BaseService service) {
+        this.plugin = plugin;
+        this.service = service;
+
+        long syncTime = plugin.getConfig().getInt(service.getConfigSection() + ".sync-time", 60);
+
+        // Peers push their changes, so polling only has to catch what notifications missed.
+        if (plugin.getConfig().getBoolean("notifications.enabled") && service.supportsNotifications()) {
+            syncTime = plugin.getConfig().getInt("notifications.reconcile-time", 300);
+        }
+
+        this.idleIntervalMillis = syncTime * 1000;
+        this.minIntervalMillis = Math.min(idleIntervalMillis, Math.max(1, plugin.getConfig().getInt("sync-scheduler.min-interval", 5)) * 1000L);
+        this.maxBackoffMillis = Math.max(idleIntervalMillis, plugin.getConfig().getInt("sync-scheduler.max-backoff", 600) * 1000L);
+        this.jitter = Math.min(0.5, Math.max(0, plugin.getConfig().getDouble("sync-scheduler.jitter", 0.1)));
+        this.intervalMillis = idleIntervalMillis;
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "WhitelistSync2-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (syncTime <= 0) {
+            WhitelistSync2.LOGGER.severe("Error in the Sync Thread! " + service.getConfigSection()
+                    + ".sync-time must be above 0. Nothing will be synced!");
+            executor.shutdown();
+            return;
+        }
+
+        Metrics.gauge("sync_interval_seconds", "Current time between two syncs, before jitter.", () -> intervalMillis / 1000.0);
+
+        // Servers restarted together would otherwise all run their first sync at the same moment.
+        // Spread like later syncs, but capped by the minimum interval so the first sync stays quick.
+        long firstDelay = Math.min(minIntervalMillis, (long) (idleIntervalMillis * jitter * ThreadLocalRandom.current().nextDouble()));
+        synchronized (this) {
+            schedule(firstDelay);
+        }
+    }
+
+    // Run the next sync now instead of waiting for the interval, e.g. after a change notification.
+    // Requests made while a sync runs are merged into one sync right after it.
+    public synchronized void requestSync() {
+        if (executor.isShutdown()) {
+            return;
+        }
+        if (running) {
+            syncRequested = true;
+            return;
+        }
+        if (next != null) {
+            next.cancel(false);
+        }
+        generation++;
+        schedule(0);
+    }
+
+    /**
+     * Request a sync and wait for it, for the sync commands. Running it on this thread keeps it from racing the
+     * scheduled one over the cache and the change log position.
+     * @return whether the sync succeeded, whitelist and ops. False if syncing has stopped.
+     */
+    public boolean syncAndWait() {
+        CompletableFuture<Boolean> done = new CompletableFuture<>();
+        synchronized (this) {
+            if (executor.isShutdown()) {
+                return false;
+            }
+            waiting.add(done);
+        }
+        requestSync();
+
+        try {
+            return done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    // Cancel the next sync and wait for a running one to finish. Called from onDisable, before the database is closed.
+    public void shutdown() {
+        synchronized (this) {
+            if (next != null) {
+                next.cancel(false);
+            }
+            executor.shutdown();
+        }
+
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                WhitelistSync2.LOGGER.warning("Sync still running after " + SHUTDOWN_TIMEOUT_MILLIS + "ms, interrupting it.");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            waiting.forEach(done -> done.complete(false));
+            waiting.clear();
+        }
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    private void schedule(long delayMillis) {
+        long scheduled = generation;
+        next = executor.schedule(() -> runCycle(scheduled), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void runCycle(long scheduled) {
+        List<CompletableFuture<Boolean>> waiters;
+        synchronized (this) {
+            if (scheduled != generation) {
+                return;
+            }
+            running = true;
+            syncRequested = false;
+            // Later requests wait for the cycle that runs after this one
+            waiters = waiting;
+            waiting = new ArrayList<>();
+        }
+
+        boolean success = false;
+        boolean changed = false;
+        try {
+            long startTime = System.nanoTime();
+            if (service.copyDatabaseWhitelistedPlayersToLocal(plugin.getServer())) {
+                SYNC_TIME.recordSince(startTime);
+                changed = recordResult(service.getLastSyncResult());
+                success = true;
+            } else {
+                SYNC_FAILURES.increment();
+            }
+
+            // Ops ride along on the same cycle, so they follow notifications and sync-time like the whitelist
+            if (service.supportsOps()) {
+                startTime = System.nanoTime();
+                if (service.copyDatabaseOppedPlayersToLocal(plugin.getServer())) {
+                    OP_SYNC_TIME.recordSince(startTime);
+                    changed |= recordOpResult(service.getLastOpSyncResult());
+                } else {
+                    OP_SYNC_FAILURES.increment();
+                    success = false;
+                }
+            }
+        } catch (RuntimeException e) {
+            // Keep syncing, the next cycle may well succeed
+            WhitelistSync2.LOGGER.severe("Error in the Sync Thread!");
+            e.printStackTrace();
+            success = false;
+        } finally {
+            scheduleNext(success, changed);
+            for (CompletableFuture<Boolean> done : waiters) {
+                done.complete(success);
+            }
+        }
+    }
+
+    private synchronized void scheduleNext(boolean success, boolean changed) {
+        running = false;
+        intervalMillis = nextInterval(intervalMillis, success, changed);
+        if (executor.isShutdown()) {
+            return;
+        }
+
+        long delay = syncRequested ? 0 : withJitter(intervalMillis);
+        syncRequested = false;
+        schedule(delay);
+    }
+
+    // Changes bring the interval down to the minimum, idle syncs double it up to sync-time and failures up to max-backoff.
+    private long nextInterval(long current, boolean success, boolean changed) {
+        if (!success) {
+            return Math.min(maxBackoffMillis, Math.max(current, minIntervalMillis) * 2);
+        }
+        if (changed) {
+            return minIntervalMillis;
+        }
+        return Math.min(idleIntervalMillis, current * 2);
+    }
+
+    private long withJitter(long millis) {
+        if (jitter <= 0) {
+            return millis;
+        }
+        double factor = 1 + jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+        return (long) (millis * factor);
+    }
+
+    // Returns whether the sync changed anything.
+    private static boolean recordResult(SyncResult result) {
+        if (result == null) {
+            return false;
+        }
+        ROWS_READ.add(result.getRowsRead());
+        ROWS_ADDED.add(result.getAdded());
+        ROWS_REMOVED.add(result.getRemoved());
+        return result.getChanged() > 0;
+    }
+
+    private static boolean recordOpResult(SyncResult result) {
+        if (result == null) {
+            return false;
+        }
+        OP_ROWS_READ.add(result.getRowsRead());
+        OP_ROWS_ADDED.add(result.getAdded());
+        OP_ROWS_REMOVED.add(result.getRemoved());
+        return result.getChanged() > 0;
+    }
+
+}
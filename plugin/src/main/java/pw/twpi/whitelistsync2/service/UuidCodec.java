@@ -0,0 +1,142 @@
+package pw.twpi.whitelistsync2.service;
+
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.UUID;
+
+/**
+ * UUIDs as stored in the database: 16 bytes, most significant half first, like the BINARY(16) and blob uuid columns.
+ * Rows are read straight into a player's two halves, without building the 36 character string form.
+ */
+public final class UuidCodec {
+
+    public static final int LENGTH = 16;
+    // The string form
+    private static final int TEXT_LENGTH = 36;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private UuidCodec() {
+    }
+
+    public static byte[] toBytes(long most, long least) {
+        byte[] bytes = new byte[LENGTH];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (most >>> (56 - i * 8));
+            bytes[i + 8] = (byte) (least >>> (56 - i * 8));
+        }
+        return bytes;
+    }
+
+    public static byte[] toBytes(UUID uuid) {
+        return toBytes(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    // For UUIDs about to be written, which must be valid. The SQLException ends up in the caller's error handling.
+    public static byte[] toBytes(String uuid) throws SQLException {
+        byte[] bytes = parse(uuid);
+        if (bytes == null) {
+            throw new SQLException("Malformed UUID \"" + uuid + "\"");
+        }
+        return bytes;
+    }
+
+    // The bytes of a UUID in its string form, or null if it is missing or malformed.
+    public static byte[] parse(String uuid) {
+        if (uuid == null) {
+            return null;
+        }
+
+        try {
+            return toBytes(UUID.fromString(uuid));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The 16 bytes of a column value, or null if it does not hold a UUID. Anything else is treated like a missing one.
+     * While servers are updated, ones still on the text schema may write the string form: a whole string is read as
+     * its UUID, one cut to the column's 16 bytes as missing, so the UUID is bound again at the player's next login.
+     */
+    public static byte[] read(byte[] column) {
+        if (column == null) {
+            return null;
+        }
+        if (column.length == TEXT_LENGTH) {
+            return parse(new String(column, StandardCharsets.US_ASCII));
+        }
+        if (column.length != LENGTH || isCutText(column)) {
+            return null;
+        }
+        return column;
+    }
+
+    // Whether a column value holds a UUID.
+    public static boolean isValid(byte[] bytes) {
+        return read(bytes) != null;
+    }
+
+    // The start of a string form, "xxxxxxxx-xxxx-xx". A random UUID matches this with negligible odds.
+    private static boolean isCutText(byte[] bytes) {
+        for (int i = 0; i < LENGTH; i++) {
+            boolean dash = i == 8 || i == 13;
+            if (dash ? bytes[i] != '-' : Character.digit(bytes[i], 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static long getMost(byte[] bytes) {
+        return readLong(bytes, 0);
+    }
+
+    public static long getLeast(byte[] bytes) {
+        return readLong(bytes, 8);
+    }
+
+    // The canonical lowercase string form, or null if the bytes are not a UUID.
+    public static String toString(byte[] column) {
+        byte[] bytes = read(column);
+        if (bytes == null) {
+            return null;
+        }
+
+        char[] out = new char[36];
+        int position = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            if (i == 4 || i == 6 || i == 8 || i == 10) {
+                out[position++] = '-';
+            }
+            out[position++] = HEX[(bytes[i] >> 4) & 0xF];
+            out[position++] = HEX[bytes[i] & 0xF];
+        }
+        return new String(out);
+    }
+
+    // A player read from a row. Players whose column is not a UUID are kept, without one.
+    public static WhitelistedPlayer toPlayer(byte[] column, String name, boolean isWhitelisted) {
+        byte[] uuid = read(column);
+        if (uuid == null) {
+            return new WhitelistedPlayer(null, name, isWhitelisted);
+        }
+        return new WhitelistedPlayer(getMost(uuid), getLeast(uuid), name, isWhitelisted);
+    }
+
+    // A column value as a key matching WhitelistedPlayer#getUniqueId, or null if it is not a UUID.
+    public static UUID toUuid(byte[] column) {
+        byte[] uuid = read(column);
+        return uuid == null ? null : new UUID(getMost(uuid), getLeast(uuid));
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+}
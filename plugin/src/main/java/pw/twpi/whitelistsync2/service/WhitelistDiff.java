@@ -0,0 +1,99 @@
+package pw.twpi.whitelistsync2.service;
+
+import pw.twpi.whitelistsync2.models.SyncResult;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Works out which players to add to and remove from the local whitelist, given the rows read from the database.
+ * Local entries are hashed once, so a sync costs one pass over the local whitelist and one over the rows.
+ * Keys are whatever identifies a player for the backend, e.g. the UUID.
+ */
+public class WhitelistDiff<K> {
+
+    private final boolean full;
+    private final boolean authoritative;
+    private final HashSet<K> local;
+    // Last state read for each key, in the order keys were first seen
+    private final LinkedHashMap<K, Boolean> wanted = new LinkedHashMap<>();
+
+    private final long startTime = System.nanoTime();
+    private final long setupNanos;
+    private int rowsRead = 0;
+
+    /**
+     * @param full whether the rows are the whole table, only used for reporting
+     * @param authoritative whether the rows are the complete whitelist, so local entries without a row are removed.
+     *                      Otherwise only keys that appear in a row are touched.
+     */
+    public <T> WhitelistDiff(Collection<T> localPlayers, Function<? super T, ? extends K> key, boolean full, boolean authoritative) {
+        this.full = full;
+        this.authoritative = authoritative;
+        this.local = new HashSet<>(Math.max(16, (int) (localPlayers.size() / 0.75f) + 1));
+        for (T player : localPlayers) {
+            K localKey = key.apply(player);
+            if (localKey != null) {
+                local.add(localKey);
+            }
+        }
+        this.setupNanos = System.nanoTime() - startTime;
+    }
+
+    // Record one database row. A later row for the same key replaces an earlier one.
+    public void row(K key, boolean whitelisted) {
+        rowsRead++;
+        if (key != null) {
+            wanted.put(key, whitelisted);
+        }
+    }
+
+    public List<K> getToAdd() {
+        List<K> toAdd = new ArrayList<>();
+        for (Map.Entry<K, Boolean> entry : wanted.entrySet()) {
+            if (entry.getValue() && !local.contains(entry.getKey())) {
+                toAdd.add(entry.getKey());
+            }
+        }
+        return toAdd;
+    }
+
+    public List<K> getToRemove() {
+        List<K> toRemove = new ArrayList<>();
+        if (authoritative) {
+            for (K key : local) {
+                Boolean whitelisted = wanted.get(key);
+                if (whitelisted == null || !whitelisted) {
+                    toRemove.add(key);
+                }
+            }
+        } else {
+            for (Map.Entry<K, Boolean> entry : wanted.entrySet()) {
+                if (!entry.getValue() && local.contains(entry.getKey())) {
+                    toRemove.add(entry.getKey());
+                }
+            }
+        }
+        return toRemove;
+    }
+
+    // Pass every key to add and to remove to the callbacks, in one pass each.
+    public SyncResult apply(Consumer<? super K> add, Consumer<? super K> remove) {
+        long applyStart = System.nanoTime();
+
+        List<K> toAdd = getToAdd();
+        List<K> toRemove = getToRemove();
+        toAdd.forEach(add);
+        toRemove.forEach(remove);
+
+        long applyNanos = setupNanos + System.nanoTime() - applyStart;
+        long readNanos = applyStart - startTime - setupNanos;
+        return new SyncResult(full, rowsRead, toAdd.size(), toRemove.size(), readNanos / 1_000_000, applyNanos / 1_000_000);
+    }
+}
@@ -0,0 +1,310 @@
+package pw.twpi.whitelistsync2.service;
+
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.metrics.Metrics;
+import pw.twpi.whitelistsync2.models.WhitelistCache;
+import pw.twpi.whitelistsync2.models.WhitelistChange;
+import pw.twpi.whitelistsync2.models.WhitelistIndex;
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Local write-ahead log of whitelist changes made on this server, next to a snapshot of the whole whitelist.
+ * At startup the snapshot and the log rebuild the login whitelist before the database answers.
+ * Adds and removals the database did not take stay in the log and are written to the database once it is back.
+ *
+ * Changes are written by a single thread. Everything queued while the previous write was flushing goes
+ * to disk with one fsync. The log is compacted whenever a new snapshot is taken, keeping only the
+ * changes the database has not confirmed.
+ */
+public class WhitelistJournal {
+
+    private final WhitelistSnapshotFile snapshotFile;
+    private final WhitelistLogFile logFile;
+    // Revision up to which every logged change is known to be in the database
+    private final Path confirmedFile;
+    private final long flushDelay;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "WhitelistSync2-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    // Adds and removals the database has not confirmed, by sequence number. Guarded by this.
+    private final LinkedHashMap<Long, Entry> unconfirmed = new LinkedHashMap<>();
+    private long nextSequence = 0;
+    private long lastRevision = 0;
+    private long logGeneration = 0;
+
+    private static final class Entry {
+        private final long sequence;
+        private final WhitelistChange change;
+        private final CompletableFuture<Long> written = new CompletableFuture<>();
+        private long revision;
+
+        private Entry(long sequence, WhitelistChange change) {
+            this.sequence = sequence;
+            this.change = change;
+        }
+    }
+
+    public WhitelistJournal(File directory) {
+        this.snapshotFile = new WhitelistSnapshotFile(new File(directory, "whitelist.snapshot").toPath());
+        this.logFile = new WhitelistLogFile(new File(directory, "whitelist.wal").toPath());
+        this.confirmedFile = new File(directory, "whitelist.wal.confirmed").toPath();
+        this.flushDelay = Math.max(0, WhitelistSync2.CONFIG.getLong("journal.flush-delay", 5));
+
+        Metrics.gauge("journal_unconfirmed", "Journaled adds and removals the database has not confirmed yet.", this::getUnconfirmedCount);
+        Metrics.gauge("journal_queued", "Changes waiting to be written to the journal.", queue::size);
+    }
+
+    /**
+     * Load the snapshot and log into the login whitelist.
+     * @return the number of players loaded
+     */
+    public synchronized int open() throws IOException {
+        long startTime = System.currentTimeMillis();
+        logFile.open();
+
+        List<WhitelistedPlayer> snapshot = snapshotFile.load();
+        long snapshotMillis = System.currentTimeMillis() - startTime;
+        WhitelistLogFile.ReadResult log = logFile.read(0, 0);
+
+        // Anything logged after the confirmed revision may not have reached the database before the last shutdown.
+        logGeneration = log.getGeneration();
+        long confirmed = readConfirmed(logGeneration);
+        for (WhitelistChange change : log.getChanges()) {
+            lastRevision = change.getRevision();
+            if (change.getRevision() > confirmed && needsReplay(change)) {
+                Entry entry = new Entry(nextSequence++, change);
+                entry.revision = change.getRevision();
+                unconfirmed.put(entry.sequence, entry);
+            }
+        }
+
+        WhitelistIndex index = new WhitelistIndex(snapshot).applyChanges(log.getChanges());
+        WhitelistCache.replace(index.getPlayers());
+
+        WhitelistSync2.LOGGER.info("Loaded " + index.size() + " whitelisted players from the local journal in "
+                + (System.currentTimeMillis() - startTime) + "ms (snapshot of " + snapshot.size() + " players, "
+                + snapshotFile.size() / 1024 + "KB, in " + snapshotMillis + "ms)" + (unconfirmed.isEmpty() ? "." : ", "
+                + unconfirmed.size() + " changes still have to be written to the database."));
+        return index.size();
+    }
+
+    /**
+     * Log a change. The future completes with the change's sequence number once it is on disk.
+     * Adds and removals count as unconfirmed until {@link #confirm} is called with that sequence number.
+     */
+    public CompletableFuture<Long> append(WhitelistChange change) {
+        Entry entry;
+        synchronized (this) {
+            entry = new Entry(nextSequence++, change);
+            if (needsReplay(change)) {
+                unconfirmed.put(entry.sequence, entry);
+            }
+        }
+
+        queue.add(entry);
+        scheduleFlush();
+        return entry.written;
+    }
+
+    // Log a change and wait until it is on disk. Returns its sequence number.
+    public long appendAndWait(WhitelistChange change) throws IOException {
+        try {
+            return append(change).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing the whitelist journal.", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    // The database has the change with this sequence number.
+    public synchronized void confirm(long sequence) {
+        if (unconfirmed.remove(sequence) != null) {
+            writeConfirmed();
+        }
+    }
+
+    public synchronized int getUnconfirmedCount() {
+        return unconfirmed.size();
+    }
+
+    // Adds and removals waiting for the database, oldest first, paired with their sequence numbers.
+    public synchronized LinkedHashMap<Long, WhitelistChange> getUnconfirmed() {
+        LinkedHashMap<Long, WhitelistChange> changes = new LinkedHashMap<>();
+        for (Entry entry : unconfirmed.values()) {
+            changes.put(entry.sequence, entry.change);
+        }
+        return changes;
+    }
+
+    /**
+     * Write the given whitelist as the new snapshot and drop every logged change the database confirmed.
+     * Runs on the journal thread, after all changes queued before it.
+     */
+    public CompletableFuture<Void> snapshot(Collection<WhitelistedPlayer> players) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        writer.execute(() -> {
+            try {
+                flushQueue();
+
+                long startTime = System.currentTimeMillis();
+                snapshotFile.write(players);
+
+                synchronized (this) {
+                    // Changes queued since the flush above are appended to the new log by the next flush.
+                    List<Entry> pending = new ArrayList<>();
+                    List<WhitelistChange> changes = new ArrayList<>();
+                    for (Entry entry : unconfirmed.values()) {
+                        if (entry.revision > 0) {
+                            pending.add(entry);
+                            changes.add(entry.change);
+                        }
+                    }
+
+                    List<WhitelistChange> written = logFile.rewrite(changes);
+                    for (int i = 0; i < pending.size(); i++) {
+                        pending.get(i).revision = written.get(i).getRevision();
+                    }
+                    lastRevision = written.isEmpty() ? 0 : written.get(written.size() - 1).getRevision();
+                    logGeneration++;
+                    writeConfirmed();
+                }
+
+                WhitelistSync2.LOGGER.fine("Wrote whitelist snapshot of " + players.size() + " players ("
+                        + snapshotFile.size() / 1024 + "KB) in " + (System.currentTimeMillis() - startTime) + "ms.");
+                done.complete(null);
+            } catch (IOException e) {
+                WhitelistSync2.LOGGER.severe("Failed to write the whitelist snapshot!");
+                e.printStackTrace();
+                done.completeExceptionally(e);
+            }
+        });
+        return done;
+    }
+
+    // Write what is still queued and stop the journal thread.
+    public void close() {
+        writer.execute(this::flushQueue);
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Adds and removals have to reach the database. Binds and renames are retried by the write-behind queue.
+    private static boolean needsReplay(WhitelistChange change) {
+        return change.isRemoved() || !change.isIDWhitelisted();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            writer.execute(() -> {
+                // Give changes arriving at the same moment a chance to share the fsync
+                if (flushDelay > 0) {
+                    try {
+                        Thread.sleep(flushDelay);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                flushScheduled.set(false);
+                flushQueue();
+            });
+        }
+    }
+
+    // Runs on the journal thread.
+    private void flushQueue() {
+        List<Entry> batch = new ArrayList<>();
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            batch.add(entry);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<WhitelistChange> changes = new ArrayList<>(batch.size());
+        for (Entry queued : batch) {
+            changes.add(queued.change);
+        }
+
+        try {
+            List<WhitelistChange> written = logFile.append(changes);
+            synchronized (this) {
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).revision = written.get(i).getRevision();
+                }
+                lastRevision = written.get(written.size() - 1).getRevision();
+            }
+            for (Entry queued : batch) {
+                queued.written.complete(queued.sequence);
+            }
+        } catch (IOException e) {
+            WhitelistSync2.LOGGER.severe("Failed to write " + batch.size() + " changes to the whitelist journal!");
+            e.printStackTrace();
+            for (Entry queued : batch) {
+                queued.written.completeExceptionally(e);
+            }
+        }
+    }
+
+    // Everything before the oldest unconfirmed change is in the database. Caller holds this.
+    private void writeConfirmed() {
+        long confirmed = lastRevision;
+        for (Entry entry : unconfirmed.values()) {
+            // Revision 0 means still queued, so it is after everything on disk
+            if (entry.revision > 0) {
+                confirmed = Math.min(confirmed, entry.revision - 1);
+            }
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(16);
+            buffer.putLong(logGeneration).putLong(confirmed);
+            // Not flushed to disk: if it is lost, confirmed changes are written to the database again, which is harmless.
+            Files.write(confirmedFile, buffer.array());
+        } catch (IOException e) {
+            WhitelistSync2.LOGGER.warning("Failed to save the journal position, some changes may be written to the database twice.");
+        }
+    }
+
+    private long readConfirmed(long generation) throws IOException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(confirmedFile));
+            if (buffer.remaining() == 16 && buffer.getLong() == generation) {
+                return buffer.getLong();
+            }
+        } catch (NoSuchFileException ignored) {
+        }
+
+        // Unknown position, replay everything in the log
+        return 0;
+    }
+}
@@ -0,0 +1,321 @@
+package pw.twpi.whitelistsync2.service;
+
+import pw.twpi.whitelistsync2.models.WhitelistChange;
+import pw.twpi.whitelistsync2.models.WhitelistIndex;
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of whitelist changes, shared by every server pointing at the same path.
+ * Each record is one {@link WhitelistChange}. The byte offset after a record is its revision, so a reader
+ * only has to remember where it stopped. Compaction rewrites the file with one record per player and
+ * bumps the generation in the header, which tells readers their offset is no longer valid.
+ * Servers coordinate through an exclusive lock on a separate .lock file, held for every read and write.
+ *
+ * Layout: header (magic, version, generation), then records of
+ * [payload length][flags][uuid as two longs, if present][name as UTF, if present][CRC32 of the payload].
+ */
+public class WhitelistLogFile {
+
+    private static final int MAGIC = 0x57534C47;
+    private static final short VERSION = 1;
+    static final int HEADER_SIZE = 4 + 2 + 8;
+
+    private static final int FLAG_ID_WHITELISTED = 1;
+    private static final int FLAG_REMOVED = 2;
+    private static final int FLAG_UUID = 4;
+    private static final int FLAG_NAME = 8;
+
+    // Upper bound for one record, anything larger is treated as a damaged tail
+    private static final int MAX_PAYLOAD = 1024;
+
+    private final Path path;
+    private final Path lockPath;
+
+    /**
+     * Changes read by {@link #read}. If the generation differs from the one passed in, the changes
+     * start at the beginning of the file and replace everything read before.
+     */
+    public static final class ReadResult {
+        private final long generation;
+        private final long endOffset;
+        private final int records;
+        private final List<WhitelistChange> changes;
+
+        private ReadResult(long generation, long endOffset, int records, List<WhitelistChange> changes) {
+            this.generation = generation;
+            this.endOffset = endOffset;
+            this.records = records;
+            this.changes = changes;
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        public long getEndOffset() {
+            return endOffset;
+        }
+
+        public int getRecords() {
+            return records;
+        }
+
+        public List<WhitelistChange> getChanges() {
+            return changes;
+        }
+    }
+
+    public WhitelistLogFile(Path path) {
+        this.path = path;
+        this.lockPath = path.resolveSibling(path.getFileName() + ".lock");
+    }
+
+    // Create the file if needed and cut off a record left half written by a crash.
+    public synchronized void open() throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+
+        try (FileChannel lockChannel = openLock(); FileLock ignored = lockChannel.lock()) {
+            if (!Files.exists(path) || Files.size(path) == 0) {
+                writeHeader(path, 1);
+                return;
+            }
+
+            readGeneration();
+            long validEnd = readFrom(HEADER_SIZE, new ArrayList<>());
+            if (validEnd < Files.size(path)) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(validEnd);
+                    channel.force(true);
+                }
+            }
+        }
+    }
+
+    public long size() throws IOException {
+        return Files.size(path);
+    }
+
+    /**
+     * Read the changes after fromOffset. If the file was compacted since generation, everything is read again.
+     * Pass generation 0 to read the whole file.
+     */
+    public synchronized ReadResult read(long generation, long fromOffset) throws IOException {
+        try (FileChannel lockChannel = openLock(); FileLock ignored = lockChannel.lock()) {
+            long currentGeneration = readGeneration();
+            long start = currentGeneration == generation ? Math.max(HEADER_SIZE, fromOffset) : HEADER_SIZE;
+
+            List<WhitelistChange> changes = new ArrayList<>();
+            long end = readFrom(start, changes);
+            return new ReadResult(currentGeneration, end, changes.size(), changes);
+        }
+    }
+
+    /**
+     * Append changes and flush them to disk, all under one lock.
+     * @return the changes with their revisions set
+     */
+    public synchronized List<WhitelistChange> append(List<WhitelistChange> changes) throws IOException {
+        if (changes.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        try (FileChannel lockChannel = openLock(); FileLock ignored = lockChannel.lock();
+             FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            long offset = channel.size();
+            channel.position(offset);
+
+            List<WhitelistChange> written = new ArrayList<>(changes.size());
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+            for (WhitelistChange change : changes) {
+                byte[] record = encode(change);
+                out.write(record);
+                offset += record.length;
+                written.add(new WhitelistChange(offset, change.getUuid(), change.getName(), change.isIDWhitelisted(), change.isRemoved()));
+            }
+            out.flush();
+            channel.force(false);
+
+            return written;
+        }
+    }
+
+    /**
+     * Rewrite the file with one record per whitelisted player and move to the next generation.
+     * @return the number of records in the compacted file
+     */
+    public synchronized int compact() throws IOException {
+        try (FileChannel lockChannel = openLock(); FileLock ignored = lockChannel.lock()) {
+            List<WhitelistChange> changes = new ArrayList<>();
+            readFrom(HEADER_SIZE, changes);
+
+            List<WhitelistChange> players = new ArrayList<>();
+            for (WhitelistedPlayer player : WhitelistIndex.EMPTY.applyChanges(changes).getPlayers()) {
+                players.add(new WhitelistChange(0, player.getUuid(), player.getName(), player.isIDWhitelisted(), false));
+            }
+
+            return writeGeneration(readGeneration() + 1, players).size();
+        }
+    }
+
+    /**
+     * Replace the whole file with the given changes and move to the next generation.
+     * @return the changes with their new revisions set
+     */
+    public synchronized List<WhitelistChange> rewrite(List<WhitelistChange> changes) throws IOException {
+        try (FileChannel lockChannel = openLock(); FileLock ignored = lockChannel.lock()) {
+            return writeGeneration(readGeneration() + 1, changes);
+        }
+    }
+
+    // Write a new file next to the current one, then move it over in one step. Caller holds the lock.
+    private List<WhitelistChange> writeGeneration(long generation, List<WhitelistChange> changes) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        writeHeader(tmp, generation);
+
+        List<WhitelistChange> written = new ArrayList<>(changes.size());
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long offset = channel.size();
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+            for (WhitelistChange change : changes) {
+                byte[] record = encode(change);
+                out.write(record);
+                offset += record.length;
+                written.add(new WhitelistChange(offset, change.getUuid(), change.getName(), change.isIDWhitelisted(), change.isRemoved()));
+            }
+            out.flush();
+            channel.force(true);
+        }
+
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    private FileChannel openLock() throws IOException {
+        return FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private long readGeneration() throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(path + " is not a whitelist log file.");
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException(path + " has unsupported version " + version + ".");
+            }
+            return in.readLong();
+        }
+    }
+
+    // Read records from offset into changes. Returns the offset after the last complete record.
+    private long readFrom(long offset, List<WhitelistChange> changes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.position(offset);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+            CRC32 crc = new CRC32();
+
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    if (length <= 0 || length > MAX_PAYLOAD) {
+                        return offset;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+
+                    crc.reset();
+                    crc.update(payload, 0, payload.length);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        return offset;
+                    }
+                } catch (EOFException e) {
+                    return offset;
+                }
+
+                offset += 4 + payload.length + 4;
+                changes.add(decode(payload, offset));
+            }
+        }
+    }
+
+    private static void writeHeader(Path file, long generation) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(generation);
+            out.flush();
+            channel.force(true);
+        }
+    }
+
+    private static byte[] encode(WhitelistChange change) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream payload = new DataOutputStream(bytes);
+
+        int flags = (change.isIDWhitelisted() ? FLAG_ID_WHITELISTED : 0)
+                | (change.isRemoved() ? FLAG_REMOVED : 0)
+                | (change.getUuid() != null ? FLAG_UUID : 0)
+                | (change.getName() != null ? FLAG_NAME : 0);
+        payload.writeByte(flags);
+        if (change.getUuid() != null) {
+            UUID uuid = UUID.fromString(change.getUuid());
+            payload.writeLong(uuid.getMostSignificantBits());
+            payload.writeLong(uuid.getLeastSignificantBits());
+        }
+        if (change.getName() != null) {
+            payload.writeUTF(change.getName());
+        }
+        payload.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray(), 0, bytes.size());
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(bytes.size() + 8);
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+        out.writeInt((int) crc.getValue());
+        out.flush();
+        return record.toByteArray();
+    }
+
+    private static WhitelistChange decode(byte[] payload, long revision) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int flags = in.readUnsignedByte();
+        String uuid = null;
+        String name = null;
+        if ((flags & FLAG_UUID) != 0) {
+            uuid = new UUID(in.readLong(), in.readLong()).toString();
+        }
+        if ((flags & FLAG_NAME) != 0) {
+            name = in.readUTF();
+        }
+        return new WhitelistChange(revision, uuid, name, (flags & FLAG_ID_WHITELISTED) != 0, (flags & FLAG_REMOVED) != 0);
+    }
+}
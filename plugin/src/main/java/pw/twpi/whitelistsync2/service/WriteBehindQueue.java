@@ -0,0 +1,184 @@
+package pw.twpi.whitelistsync2.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import pw.twpi.whitelistsync2.WhitelistSync2;
+import pw.twpi.whitelistsync2.models.PendingPlayerUpdate;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queues the UUID and name updates made at login and writes them to the database in batches
+ * on a background thread, so the login does not wait for the database.
+ * Updates for the same UUID are combined while they wait. Whatever cannot be written on shutdown
+ * is saved to disk and queued again on the next start.
+ */
+public class WriteBehindQueue {
+
+    private static final Gson gson = new Gson();
+
+    private final BaseService service;
+    private final File pendingFile;
+    private final int batchSize;
+    private final long flushInterval;
+
+    // Keyed by UUID, in the order the first update for each UUID arrived
+    private final LinkedHashMap<String, PendingPlayerUpdate> pending = new LinkedHashMap<>();
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService flusher;
+
+    public WriteBehindQueue(BaseService service, File pendingFile) {
+        this.service = service;
+        this.pendingFile = pendingFile;
+        // Backends without batch writes take one update per call
+        this.batchSize = service.supportsBatch() ? Math.max(1, WhitelistSync2.CONFIG.getInt("write-behind.batch-size", 200)) : 1;
+        this.flushInterval = Math.max(50, WhitelistSync2.CONFIG.getLong("write-behind.flush-interval", 1000));
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "WhitelistSync2-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        loadPending();
+        flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    // Store the UUID of a name-only entry that just connected.
+    public void enqueueBind(String name, String uuid) {
+        enqueue(new PendingPlayerUpdate(uuid, name, null));
+    }
+
+    // Store the new name of a player that connected under a different name.
+    public void enqueueRename(String uuid, String name) {
+        enqueue(new PendingPlayerUpdate(uuid, null, name));
+    }
+
+    public int size() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    // Write everything queued so far. Returns false if the database rejected a batch; those updates stay queued.
+    public boolean flush() {
+        synchronized (flushLock) {
+            try {
+                List<PendingPlayerUpdate> batch;
+                while (!(batch = takeBatch()).isEmpty()) {
+                    if (!service.flushPlayerUpdates(batch)) {
+                        requeue(batch);
+                        return false;
+                    }
+                }
+                return true;
+            } catch (RuntimeException e) {
+                WhitelistSync2.LOGGER.severe("Error writing queued player updates.");
+                e.printStackTrace();
+                return false;
+            }
+        }
+    }
+
+    // Stop the background flush, write what is left and save anything the database did not take.
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!flush()) {
+            savePending();
+        }
+    }
+
+    private void enqueue(PendingPlayerUpdate update) {
+        synchronized (pending) {
+            pending.merge(update.getUuid(), update, PendingPlayerUpdate::merge);
+        }
+    }
+
+    private List<PendingPlayerUpdate> takeBatch() {
+        synchronized (pending) {
+            List<PendingPlayerUpdate> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+            Iterator<PendingPlayerUpdate> iterator = pending.values().iterator();
+            while (iterator.hasNext() && batch.size() < batchSize) {
+                batch.add(iterator.next());
+                iterator.remove();
+            }
+            return batch;
+        }
+    }
+
+    // Put a failed batch back in front of anything queued since, keeping newer updates on top.
+    private void requeue(List<PendingPlayerUpdate> batch) {
+        synchronized (pending) {
+            LinkedHashMap<String, PendingPlayerUpdate> merged = new LinkedHashMap<>();
+            for (PendingPlayerUpdate update : batch) {
+                merged.put(update.getUuid(), update);
+            }
+            for (Map.Entry<String, PendingPlayerUpdate> entry : pending.entrySet()) {
+                merged.merge(entry.getKey(), entry.getValue(), PendingPlayerUpdate::merge);
+            }
+
+            pending.clear();
+            pending.putAll(merged);
+        }
+    }
+
+    private void savePending() {
+        List<PendingPlayerUpdate> updates;
+        synchronized (pending) {
+            updates = new ArrayList<>(pending.values());
+        }
+
+        try (Writer writer = new FileWriter(pendingFile)) {
+            gson.toJson(updates.toArray(new PendingPlayerUpdate[0]), writer);
+            WhitelistSync2.LOGGER.warning("Database unreachable, saved " + updates.size() + " queued player updates to " + pendingFile.getName() + ".");
+        } catch (IOException e) {
+            WhitelistSync2.LOGGER.severe("Failed to save queued player updates! " + updates.size() + " updates are lost.");
+            e.printStackTrace();
+        }
+    }
+
+    private void loadPending() {
+        if (!pendingFile.exists()) {
+            return;
+        }
+
+        try (Reader reader = new FileReader(pendingFile)) {
+            PendingPlayerUpdate[] updates = gson.fromJson(reader, PendingPlayerUpdate[].class);
+            if (updates != null) {
+                for (PendingPlayerUpdate update : updates) {
+                    enqueue(update);
+                }
+                WhitelistSync2.LOGGER.info("Loaded " + updates.length + " queued player updates from the last shutdown.");
+            }
+        } catch (IOException | JsonParseException e) {
+            WhitelistSync2.LOGGER.severe("Failed to read queued player updates from " + pendingFile.getName() + ".");
+            e.printStackTrace();
+            return;
+        }
+
+        if (!pendingFile.delete()) {
+            WhitelistSync2.LOGGER.warning("Could not delete " + pendingFile.getName() + ".");
+        }
+    }
+}
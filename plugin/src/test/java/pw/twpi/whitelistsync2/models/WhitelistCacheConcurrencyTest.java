@@ -0,0 +1,178 @@
+package pw.twpi.whitelistsync2.models;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Login threads reading the cache while the sync thread and command threads publish new snapshots.
+ * Reads must never throw, must always see a consistent index, and must keep going while a writer holds the cache lock.
+ */
+public class WhitelistCacheConcurrencyTest {
+
+    private static final int PLAYERS = 20000;
+    private static final int READERS = 8;
+    private static final long RUN_MILLIS = 3000;
+
+    private final AtomicBoolean stop = new AtomicBoolean(false);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicLong reads = new AtomicLong();
+
+    @Test
+    public void readsNeverBlockOrThrowWhileSnapshotsArePublished() throws Exception {
+        WhitelistCache.replace(players(0, PLAYERS));
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            threads.add(start("login-" + i, this::readLoop));
+        }
+        threads.add(start("sync", this::syncLoop));
+        threads.add(start("command", this::commandLoop));
+
+        // Hold the writers' lock for a while, login threads must not notice
+        long deadline = System.currentTimeMillis() + RUN_MILLIS;
+        int lockedChecks = 0;
+        while (System.currentTimeMillis() < deadline && failure.get() == null) {
+            synchronized (WhitelistCache.class) {
+                long before = reads.get();
+                Thread.sleep(100);
+                assertTrue("Reads stopped while the cache lock was held", reads.get() > before);
+                lockedChecks++;
+            }
+            Thread.sleep(50);
+        }
+
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+            if (thread.isAlive()) {
+                fail(thread.getName() + " did not finish");
+            }
+        }
+
+        assertNull("A thread failed: " + failure.get(), failure.get());
+        assertTrue(lockedChecks > 0);
+        assertTrue(reads.get() > 0);
+    }
+
+    private void readLoop() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (!stop.get()) {
+            WhitelistIndex index = WhitelistCache.current();
+            int i = random.nextInt(PLAYERS * 2);
+            UUID uuid = uuid(i);
+            String name = "player" + i;
+
+            index.mightContain(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), name);
+
+            WhitelistedPlayer byUuid = index.getByUuid(uuid);
+            if (byUuid != null && !byUuid.hasUuid(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits())) {
+                throw new AssertionError("UUID lookup returned " + byUuid + " for " + uuid);
+            }
+
+            WhitelistedPlayer byName = index.getByName(name);
+            if (byName != null && !WhitelistIndex.normalize(byName.getName()).equals(name)) {
+                throw new AssertionError("Name lookup returned " + byName + " for " + name);
+            }
+
+            // Now and then walk the whole snapshot, which must match its own size
+            if (random.nextInt(5000) == 0 && index.getPlayers().size() != index.size()) {
+                throw new AssertionError("Snapshot size " + index.size() + " but " + index.getPlayers().size() + " players");
+            }
+            reads.incrementAndGet();
+        }
+    }
+
+    // Full syncs replace the snapshot, delta syncs apply batches of changes.
+    private void syncLoop() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int round = 0;
+        while (!stop.get()) {
+            if (round++ % 10 == 0) {
+                WhitelistCache.replace(players(random.nextInt(PLAYERS), PLAYERS));
+                continue;
+            }
+
+            List<WhitelistChange> changes = new ArrayList<>();
+            for (int j = 0; j < 50; j++) {
+                int i = random.nextInt(PLAYERS * 2);
+                changes.add(new WhitelistChange(-1, uuid(i).toString(), "player" + i, true, random.nextInt(3) == 0));
+            }
+            WhitelistCache.applyChanges(changes);
+        }
+    }
+
+    // Commands and logins: removals, renames, UUID binds and single adds.
+    private void commandLoop() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (!stop.get()) {
+            int i = random.nextInt(PLAYERS * 2);
+            switch (random.nextInt(4)) {
+                case 0:
+                    WhitelistCache.removeByName("Player" + i);
+                    break;
+                case 1:
+                    WhitelistCache.rename(uuid(i), "player" + random.nextInt(PLAYERS * 2));
+                    break;
+                case 2:
+                    WhitelistCache.applyChanges(Collections.singletonList(new WhitelistChange(-1, null, "player" + i, false, false)));
+                    WhitelistCache.bindUuid("player" + i, uuid(i));
+                    break;
+                default:
+                    WhitelistCache.applyChanges(Collections.singletonList(new WhitelistChange(-1, uuid(i).toString(), "player" + i, true, false)));
+                    break;
+            }
+        }
+    }
+
+    private Thread start(String name, Runnable loop) {
+        Thread thread = new Thread(() -> {
+            try {
+                loop.run();
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+                stop.set(true);
+            }
+        }, name);
+        thread.start();
+        return thread;
+    }
+
+    private static List<WhitelistedPlayer> players(int from, int count) {
+        List<WhitelistedPlayer> players = new ArrayList<>(count);
+        for (int i = from; i < from + count; i++) {
+            UUID uuid = uuid(i);
+            players.add(new WhitelistedPlayer(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), "player" + i, true));
+        }
+        return players;
+    }
+
+    private static UUID uuid(int i) {
+        return new UUID(0x1234L + i, i * 31L);
+    }
+
+    @Test
+    public void replacedSnapshotIsSeenWhole() {
+        WhitelistCache.replace(players(0, 10));
+        WhitelistIndex before = WhitelistCache.current();
+        WhitelistCache.replace(players(100, 5));
+
+        // A reader holding the old snapshot keeps seeing it unchanged
+        assertEquals(10, before.size());
+        assertEquals(5, WhitelistCache.current().size());
+        assertNull(WhitelistCache.current().getByName("player0"));
+    }
+}
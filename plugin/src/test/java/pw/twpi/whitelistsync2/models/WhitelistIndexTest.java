@@ -0,0 +1,160 @@
+package pw.twpi.whitelistsync2.models;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WhitelistIndexTest {
+
+    @Test
+    public void lookupsFindEveryPlayer() {
+        WhitelistIndex index = new WhitelistIndex(players(0, 1000));
+        assertEquals(1000, index.size());
+
+        for (int i = 0; i < 1000; i++) {
+            WhitelistedPlayer player = index.getByName("player" + i);
+            assertNotNull(player);
+            assertSame(player, index.getByUuid(uuid(i)));
+            assertTrue(index.mightContain(uuid(i).getMostSignificantBits(), uuid(i).getLeastSignificantBits(), "player" + i));
+        }
+        assertNull(index.getByName("player1000"));
+        assertNull(index.getByUuid(uuid(1000)));
+    }
+
+    @Test
+    public void removeByNameIgnoresCase() {
+        WhitelistIndex index = new WhitelistIndex(players(0, 10)).removeByName("PLAYER3");
+
+        assertEquals(9, index.size());
+        assertNull(index.getByName("player3"));
+        assertNull(index.getByUuid(uuid(3)));
+        assertEquals(9, index.getPlayers().size());
+    }
+
+    @Test
+    public void replaceLeavesTheOldIndexUnchanged() {
+        WhitelistIndex before = new WhitelistIndex(players(0, 10));
+        WhitelistedPlayer old = before.getByName("player5");
+        WhitelistIndex after = before.replace(old, new WhitelistedPlayer(uuid(5).getMostSignificantBits(), uuid(5).getLeastSignificantBits(), "renamed", true));
+
+        assertSame(old, before.getByName("player5"));
+        assertNull(before.getByName("renamed"));
+        assertNull(after.getByName("player5"));
+        assertEquals("renamed", after.getByUuid(uuid(5)).getName());
+        assertEquals(10, after.size());
+    }
+
+    @Test
+    public void changesReplaceHoldersOfTheSameUuidOrName() {
+        WhitelistIndex index = new WhitelistIndex(players(0, 10));
+        index = index.applyChanges(Collections.singletonList(new WhitelistChange(1, uuid(2).toString(), "other", true, false)));
+
+        assertNull(index.getByName("player2"));
+        assertEquals("other", index.getByUuid(uuid(2)).getName());
+
+        index = index.applyChanges(Collections.singletonList(new WhitelistChange(2, uuid(50).toString(), "player3", true, false)));
+        assertNull(index.getByUuid(uuid(3)));
+        assertTrue(index.getByName("player3").hasUuid(uuid(50).getMostSignificantBits(), uuid(50).getLeastSignificantBits()));
+        assertEquals(10, index.size());
+    }
+
+    // Batches too large for the overlay are rebuilt, and must keep entries without a name like single changes do
+    @Test
+    public void rebuiltBatchKeepsPlayersWithoutAName() {
+        List<WhitelistedPlayer> players = players(0, 10);
+        players.add(new WhitelistedPlayer(uuid(100).getMostSignificantBits(), uuid(100).getLeastSignificantBits(), null, true));
+        players.add(new WhitelistedPlayer(uuid(101).getMostSignificantBits(), uuid(101).getLeastSignificantBits(), null, true));
+        WhitelistIndex index = new WhitelistIndex(players);
+
+        List<WhitelistChange> changes = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            changes.add(new WhitelistChange(i, uuid(1000 + i).toString(), "added" + i, false, false));
+        }
+        changes.add(new WhitelistChange(2000, uuid(101).toString(), "bound", true, false));
+        index = index.applyChanges(changes);
+
+        assertNotNull(index.getByUuid(uuid(100)));
+        assertNull(index.getByUuid(uuid(100)).getName());
+        assertEquals("bound", index.getByUuid(uuid(101)).getName());
+        assertEquals(10 + 2 + 2000, index.size());
+    }
+
+    // Single changes go through the overlay, the result must match an index built from scratch
+    @Test
+    public void overlayMatchesRebuild() {
+        Random random = new Random(7);
+        WhitelistIndex index = new WhitelistIndex(players(0, 2000));
+
+        for (int round = 0; round < 5000; round++) {
+            int i = random.nextInt(4000);
+            switch (random.nextInt(4)) {
+                case 0:
+                    index = index.removeByName("player" + i);
+                    break;
+                case 1:
+                    index = index.applyChanges(Collections.singletonList(new WhitelistChange(round, null, "player" + i, false, false)));
+                    break;
+                case 2:
+                    WhitelistedPlayer old = index.getByName("player" + i);
+                    if (old != null) {
+                        index = index.replace(old, new WhitelistedPlayer(uuid(i).getMostSignificantBits(), uuid(i).getLeastSignificantBits(), old.getName(), true));
+                    }
+                    break;
+                default:
+                    index = index.applyChanges(Collections.singletonList(new WhitelistChange(round, uuid(i).toString(), "player" + random.nextInt(4000), true, random.nextBoolean())));
+                    break;
+            }
+
+            if (round % 500 == 0) {
+                assertSameContents(new WhitelistIndex(index.getPlayers()), index);
+            }
+        }
+        assertSameContents(new WhitelistIndex(index.getPlayers()), index);
+    }
+
+    private static void assertSameContents(WhitelistIndex expected, WhitelistIndex actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(actual.size(), actual.getPlayers().size());
+
+        Set<String> names = new HashSet<>();
+        for (WhitelistedPlayer player : actual.getPlayers()) {
+            String name = WhitelistIndex.normalize(player.getName());
+            assertTrue("Duplicate name " + name, names.add(name));
+            assertSame(player, actual.getByName(name));
+            assertNotNull(expected.getByName(name));
+            if (player.hasUuid()) {
+                assertSame(player, actual.getByUuid(player.getUuidMost(), player.getUuidLeast()));
+                assertTrue(actual.mightContain(player.getUuidMost(), player.getUuidLeast(), name));
+            }
+        }
+
+        for (int i = 0; i < 4000; i++) {
+            assertEquals(expected.getByName("player" + i) != null, actual.getByName("player" + i) != null);
+            assertEquals(expected.getByUuid(uuid(i)) != null, actual.getByUuid(uuid(i)) != null);
+        }
+    }
+
+    private static List<WhitelistedPlayer> players(int from, int count) {
+        List<WhitelistedPlayer> players = new ArrayList<>(count);
+        for (int i = from; i < from + count; i++) {
+            players.add(new WhitelistedPlayer(uuid(i).getMostSignificantBits(), uuid(i).getLeastSignificantBits(), "player" + i, true));
+        }
+        return players;
+    }
+
+    private static UUID uuid(int i) {
+        return new UUID(0x5678L + i, i * 17L);
+    }
+}
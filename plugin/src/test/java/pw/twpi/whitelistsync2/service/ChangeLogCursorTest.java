@@ -0,0 +1,89 @@
+package pw.twpi.whitelistsync2.service;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeLogCursorTest {
+
+    @Test
+    public void needsFullSyncUntilReset() {
+        ChangeLogCursor cursor = new ChangeLogCursor();
+        assertTrue(cursor.needsFullSync());
+
+        cursor.reset(10);
+        assertFalse(cursor.needsFullSync());
+        assertEquals(10, cursor.queryFrom());
+    }
+
+    @Test
+    public void revisionsAlreadyReadAreSkipped() {
+        ChangeLogCursor cursor = new ChangeLogCursor();
+        cursor.reset(10);
+
+        assertTrue(cursor.accept(11));
+        assertFalse(cursor.accept(11));
+        assertFalse(cursor.accept(5));
+        assertEquals(11, cursor.getLastRevision());
+    }
+
+    @Test
+    public void skippedRevisionIsQueriedAgainAndAppliedWhenItCommits() {
+        ChangeLogCursor cursor = new ChangeLogCursor();
+        cursor.reset(10);
+
+        assertTrue(cursor.accept(13));
+        cursor.endPoll();
+        assertEquals(10, cursor.queryFrom());
+
+        // A transaction that started earlier commits 12
+        assertTrue(cursor.accept(12));
+        assertFalse(cursor.accept(13));
+        cursor.endPoll();
+        assertEquals(10, cursor.queryFrom());
+
+        assertTrue(cursor.accept(11));
+        cursor.endPoll();
+        assertEquals(13, cursor.queryFrom());
+    }
+
+    @Test
+    public void skippedRevisionIsGivenUpAfterAFewPolls() {
+        ChangeLogCursor cursor = new ChangeLogCursor();
+        cursor.reset(10);
+        cursor.accept(12);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(10, cursor.queryFrom());
+            cursor.endPoll();
+        }
+        assertEquals(12, cursor.queryFrom());
+
+        // Too late, treated as rolled back
+        assertFalse(cursor.accept(11));
+    }
+
+    @Test
+    public void resetForgetsGaps() {
+        ChangeLogCursor cursor = new ChangeLogCursor();
+        cursor.reset(10);
+        cursor.accept(20);
+        cursor.reset(30);
+
+        assertEquals(30, cursor.queryFrom());
+        assertFalse(cursor.accept(15));
+    }
+
+    @Test
+    public void rememberedGapsAreCapped() {
+        ChangeLogCursor cursor = new ChangeLogCursor();
+        cursor.reset(0);
+        cursor.accept(1000000);
+
+        assertEquals(0, cursor.queryFrom());
+        assertTrue(cursor.accept(1000));
+        assertFalse(cursor.accept(1001));
+    }
+}
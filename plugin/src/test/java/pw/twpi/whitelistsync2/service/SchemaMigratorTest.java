@@ -0,0 +1,149 @@
+package pw.twpi.whitelistsync2.service;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import pw.twpi.whitelistsync2.WhitelistSync2;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the migrator against a SQLite database in a temporary directory.
+ */
+public class SchemaMigratorTest {
+
+    private Path directory;
+    private ConnectionPool pool;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        WhitelistSync2.LOGGER = Logger.getLogger("WhitelistSync2Test");
+        WhitelistSync2.CONFIG = new YamlConfiguration();
+
+        directory = Files.createTempDirectory("whitelistsync2");
+        pool = new ConnectionPool("Test", "jdbc:sqlite:" + directory.resolve("test.db"), new Properties());
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        pool.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void migrationsRunOnceInOrder() throws SQLException {
+        List<Integer> ran = new ArrayList<>();
+        assertTrue(migrator(ran).migrate());
+        assertTrue(migrator(ran).migrate());
+
+        assertEquals(Arrays.asList(1, 2, 3), ran);
+        assertEquals(3, countApplied());
+    }
+
+    @Test
+    public void failedMigrationReleasesItsClaimAndStopsLaterOnes() throws SQLException {
+        List<Integer> ran = new ArrayList<>();
+        SchemaMigrator migrator = migrator(ran)
+                .add(4, "fails", conn -> {
+                    throw new SQLException("Broken");
+                })
+                .add(5, "after the failure", conn -> ran.add(5));
+
+        assertFalse(migrator.migrate());
+        assertEquals(Arrays.asList(1, 2, 3), ran);
+        assertEquals(3, countRows());
+
+        // Runs again on the next start
+        assertTrue(migrator(ran).add(4, "fixed", conn -> ran.add(4)).add(5, "after the fix", conn -> ran.add(5)).migrate());
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), ran);
+    }
+
+    @Test
+    public void waitsForAMigrationClaimedByAnotherServer() throws Exception {
+        List<Integer> ran = new ArrayList<>();
+        assertTrue(migrator(ran).migrate());
+        claimByOtherServer(4);
+
+        Future<Boolean> result = executor.submit(() -> migrator(ran).add(4, "other server", conn -> ran.add(4)).migrate());
+        Thread.sleep(1500);
+        assertFalse(result.isDone());
+
+        execute("UPDATE schema_version SET applied_at = 1 WHERE version = 4");
+        assertTrue(result.get(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(1, 2, 3), ran);
+    }
+
+    @Test
+    public void stopsWhenTheOtherServerGivesUp() throws Exception {
+        List<Integer> ran = new ArrayList<>();
+        claimByOtherServer(1);
+
+        Future<Boolean> result = executor.submit(() -> migrator(ran).migrate());
+        Thread.sleep(1500);
+
+        execute("DELETE FROM schema_version WHERE version = 1");
+        assertFalse(result.get(10, TimeUnit.SECONDS));
+        assertTrue(ran.isEmpty());
+    }
+
+    private SchemaMigrator migrator(List<Integer> ran) {
+        return new SchemaMigrator(pool, "")
+                .add(2, "second", conn -> ran.add(2))
+                .add(1, "first", conn -> ran.add(1))
+                .add(3, "third", conn -> ran.add(3));
+    }
+
+    private void claimByOtherServer(int version) throws SQLException {
+        execute("CREATE TABLE IF NOT EXISTS schema_version (version INTEGER NOT NULL PRIMARY KEY,"
+                + " description VARCHAR(200) NOT NULL, applied_at BIGINT NOT NULL)");
+        execute("INSERT INTO schema_version(version, description, applied_at) VALUES (" + version + ", 'other server', 0)");
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private int countApplied() throws SQLException {
+        return count("SELECT COUNT(*) FROM schema_version WHERE applied_at > 0");
+    }
+
+    private int countRows() throws SQLException {
+        return count("SELECT COUNT(*) FROM schema_version");
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
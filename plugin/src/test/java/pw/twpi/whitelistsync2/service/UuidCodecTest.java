@@ -0,0 +1,83 @@
+package pw.twpi.whitelistsync2.service;
+
+import org.junit.Test;
+import pw.twpi.whitelistsync2.models.WhitelistedPlayer;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UuidCodecTest {
+
+    private static final String UUID_STRING = "069a79f4-44e9-4726-a5be-fca90e38aaf5";
+
+    @Test
+    public void bytesRoundTrip() {
+        UUID uuid = UUID.fromString(UUID_STRING);
+        byte[] bytes = UuidCodec.toBytes(uuid);
+
+        assertEquals(UuidCodec.LENGTH, bytes.length);
+        assertEquals(uuid.getMostSignificantBits(), UuidCodec.getMost(bytes));
+        assertEquals(uuid.getLeastSignificantBits(), UuidCodec.getLeast(bytes));
+        assertEquals(UUID_STRING, UuidCodec.toString(bytes));
+    }
+
+    @Test
+    public void mostSignificantHalfComesFirst() {
+        byte[] bytes = UuidCodec.toBytes(0x0102030405060708L, 0x090A0B0C0D0E0F10L);
+        for (int i = 0; i < UuidCodec.LENGTH; i++) {
+            assertEquals(i + 1, bytes[i]);
+        }
+        assertEquals("01020304-0506-0708-090a-0b0c0d0e0f10", UuidCodec.toString(bytes));
+    }
+
+    @Test
+    public void parseRejectsMalformedUuids() {
+        assertArrayEquals(UuidCodec.toBytes(UUID.fromString(UUID_STRING)), UuidCodec.parse(UUID_STRING));
+        assertNull(UuidCodec.parse(null));
+        assertNull(UuidCodec.parse("not a uuid"));
+    }
+
+    @Test(expected = SQLException.class)
+    public void toBytesThrowsForMalformedUuids() throws SQLException {
+        UuidCodec.toBytes("not a uuid");
+    }
+
+    @Test
+    public void onlySixteenBytesAreValid() {
+        assertTrue(UuidCodec.isValid(new byte[16]));
+        assertFalse(UuidCodec.isValid(null));
+        assertFalse(UuidCodec.isValid(new byte[36]));
+        assertNull(UuidCodec.toString(new byte[4]));
+    }
+
+    @Test
+    public void textWrittenByOlderServersIsRead() {
+        byte[] text = UUID_STRING.getBytes(StandardCharsets.US_ASCII);
+        assertEquals(UUID_STRING, UuidCodec.toString(text));
+        assertEquals(UUID.fromString(UUID_STRING), UuidCodec.toUuid(text));
+
+        // Cut to the BINARY(16) column
+        assertNull(UuidCodec.toUuid(Arrays.copyOf(text, 16)));
+        assertFalse(UuidCodec.toPlayer(Arrays.copyOf(text, 16), "Notch", true).hasUuid());
+    }
+
+    @Test
+    public void playersWithoutAValidUuidAreKept() {
+        WhitelistedPlayer player = UuidCodec.toPlayer(new byte[3], "Notch", true);
+        assertFalse(player.hasUuid());
+        assertEquals("Notch", player.getName());
+
+        UUID uuid = UUID.fromString(UUID_STRING);
+        player = UuidCodec.toPlayer(UuidCodec.toBytes(uuid), "Notch", true);
+        assertTrue(player.hasUuid(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()));
+        assertEquals(UUID_STRING, player.getUuid());
+    }
+}
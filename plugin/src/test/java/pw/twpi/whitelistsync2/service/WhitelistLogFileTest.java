@@ -0,0 +1,124 @@
+package pw.twpi.whitelistsync2.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import pw.twpi.whitelistsync2.models.WhitelistChange;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WhitelistLogFileTest {
+
+    private static final String NOTCH = "069a79f4-44e9-4726-a5be-fca90e38aaf5";
+    private static final String JEB = "853c80ef-3c37-49fd-aa49-938b674adae6";
+
+    private Path directory;
+    private Path path;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("whitelistsync2");
+        path = directory.resolve("whitelist.log");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void appendedChangesAreReadBack() throws IOException {
+        WhitelistLogFile log = new WhitelistLogFile(path);
+        log.open();
+        assertEquals(WhitelistLogFile.HEADER_SIZE, log.size());
+
+        List<WhitelistChange> written = log.append(Arrays.asList(
+                new WhitelistChange(0, NOTCH, "Notch", true, false),
+                new WhitelistChange(0, null, "jeb_", false, false)));
+        assertEquals(log.size(), written.get(1).getRevision());
+
+        WhitelistLogFile.ReadResult result = log.read(0, 0);
+        assertEquals(2, result.getRecords());
+        assertEquals(log.size(), result.getEndOffset());
+        assertEquals(NOTCH, result.getChanges().get(0).getUuid());
+        assertEquals("Notch", result.getChanges().get(0).getName());
+        assertNull(result.getChanges().get(1).getUuid());
+        assertFalse(result.getChanges().get(1).isIDWhitelisted());
+    }
+
+    @Test
+    public void readContinuesFromOffset() throws IOException {
+        WhitelistLogFile log = new WhitelistLogFile(path);
+        log.open();
+        log.append(Collections.singletonList(new WhitelistChange(0, NOTCH, "Notch", true, false)));
+        WhitelistLogFile.ReadResult first = log.read(0, 0);
+
+        log.append(Collections.singletonList(new WhitelistChange(0, JEB, "jeb_", true, false)));
+        WhitelistLogFile.ReadResult next = log.read(first.getGeneration(), first.getEndOffset());
+
+        assertEquals(1, next.getRecords());
+        assertEquals(JEB, next.getChanges().get(0).getUuid());
+    }
+
+    @Test
+    public void compactionCollapsesRecordsAndStartsANewGeneration() throws IOException {
+        WhitelistLogFile log = new WhitelistLogFile(path);
+        log.open();
+        log.append(Arrays.asList(
+                new WhitelistChange(0, NOTCH, "Notch", true, false),
+                new WhitelistChange(0, JEB, "jeb_", true, false),
+                new WhitelistChange(0, NOTCH, "Notch", true, true),
+                new WhitelistChange(0, JEB, "jeb", true, false)));
+        WhitelistLogFile.ReadResult before = log.read(0, 0);
+
+        assertEquals(1, log.compact());
+
+        // A reader at the old generation reads the whole new file
+        WhitelistLogFile.ReadResult after = log.read(before.getGeneration(), before.getEndOffset());
+        assertTrue(after.getGeneration() > before.getGeneration());
+        assertEquals(1, after.getRecords());
+        assertEquals(JEB, after.getChanges().get(0).getUuid());
+        assertEquals("jeb", after.getChanges().get(0).getName());
+        assertFalse(after.getChanges().get(0).isRemoved());
+    }
+
+    @Test
+    public void tornRecordIsCutOffOnOpen() throws IOException {
+        WhitelistLogFile log = new WhitelistLogFile(path);
+        log.open();
+        log.append(Arrays.asList(
+                new WhitelistChange(0, NOTCH, "Notch", true, false),
+                new WhitelistChange(0, JEB, "jeb_", true, false)));
+        long complete = log.read(0, 0).getChanges().get(0).getRevision();
+
+        // A crash in the middle of the second record
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(log.size() - 3);
+        }
+
+        log = new WhitelistLogFile(path);
+        log.open();
+        assertEquals(complete, log.size());
+        assertEquals(1, log.read(0, 0).getRecords());
+
+        // Appends after the cut are read normally
+        log.append(Collections.singletonList(new WhitelistChange(0, JEB, "jeb_", true, false)));
+        assertEquals(2, log.read(0, 0).getRecords());
+    }
+}